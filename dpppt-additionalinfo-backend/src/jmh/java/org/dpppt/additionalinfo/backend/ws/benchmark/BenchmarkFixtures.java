@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.HistorySeries;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+import org.dpppt.additionalinfo.backend.ws.statistics.SplunkResponseParser;
+import org.dpppt.additionalinfo.backend.ws.statistics.SplunkResult;
+import org.dpppt.additionalinfo.backend.ws.statistics.StatisticHelper;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Fixtures shared by the benchmarks. The Splunk responses in src/jmh/resources/splunk have the
+ * format of the Splunk export api (one json object per line, including preview rows) and cover
+ * two years of daily values, so no network access is needed.
+ */
+public final class BenchmarkFixtures {
+
+    public static final String POSITIVE_TEST_COUNT = "positive_test_count.json";
+    public static final String USED_AUTH_CODE_COUNT = "used_auth_code_count.json";
+
+    private BenchmarkFixtures() {}
+
+    /** the object mapper as it is configured for the spring mvc message converters */
+    public static ObjectMapper objectMapper() {
+        return Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    /** a fresh ES256 key pair, the algorithm used for the response signatures */
+    public static KeyPair keyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            return generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * returns the recorded Splunk response with the given name
+     *
+     * @param name
+     * @return
+     */
+    public static byte[] splunkResponse(String name) {
+        try (InputStream in = BenchmarkFixtures.class.getResourceAsStream("/splunk/" + name)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Unknown fixture: " + name);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * builds the statistics from the recorded Splunk responses, the same way as the
+     * SplunkStatisticClient does
+     *
+     * @return statistics with about two years of history
+     */
+    public static Statistics statistics() {
+        List<SplunkResult> usedAuthCodeCount = parse(USED_AUTH_CODE_COUNT);
+        List<SplunkResult> positiveTestCount = parse(POSITIVE_TEST_COUNT);
+        // the results are in descending order
+        LocalDate startDate =
+                usedAuthCodeCount.get(usedAuthCodeCount.size() - 1).getTime().toLocalDate();
+        LocalDate endDate = usedAuthCodeCount.get(0).getTime().toLocalDate().plusDays(1);
+        HistorySeries history =
+                new HistorySeries(startDate, (int) ChronoUnit.DAYS.between(startDate, endDate));
+        for (SplunkResult result : usedAuthCodeCount) {
+            history.covidcodesEntered()
+                    .set(
+                            history.indexOf(result.getTime().toLocalDate()),
+                            result.getUsedAuthorizationCodesCount());
+        }
+        for (SplunkResult result : positiveTestCount) {
+            history.newInfections()
+                    .set(
+                            history.indexOf(result.getTime().toLocalDate()),
+                            result.getPositiveTestCount());
+        }
+        Statistics statistics = new Statistics();
+        statistics.setHistory(history);
+        StatisticHelper.calculateRollingAverage(statistics);
+
+        statistics.setLastUpdated(endDate);
+        statistics.setTotalActiveUsers(1_800_000);
+        statistics.setTotalCovidcodesEntered((int) history.covidcodesEntered().sum());
+        statistics.setCovidcodesEntered0to2dPrevWeek(0.42);
+        statistics.setNewInfectionsSevenDayAvg(
+                history.newInfectionsSevenDayAverage().get(history.size() - 4));
+        statistics.setNewInfectionsSevenDayAvgRelPrevWeek(-0.12);
+        return statistics;
+    }
+
+    private static List<SplunkResult> parse(String name) {
+        try {
+            return SplunkResponseParser.parseDescendingByTime(
+                    new ByteArrayInputStream(splunkResponse(name)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.dpppt.backend.shared.security.filter.ResponseWrapperFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Per request cost of the {@link ResponseWrapperFilter}, which buffers, hashes and signs every
+ * response that is not served pre-signed. The response body is the serialized statistics.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseWrapperFilterBenchmark {
+
+    private ResponseWrapperFilter filter;
+    private HttpServlet servlet;
+
+    @Setup
+    public void setup() throws Exception {
+        filter = new ResponseWrapperFilter(BenchmarkFixtures.keyPair(), 1, List.of());
+        byte[] body =
+                BenchmarkFixtures.objectMapper()
+                        .writeValueAsBytes(BenchmarkFixtures.statistics());
+        servlet =
+                new HttpServlet() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+                            throws IOException {
+                        resp.setContentType("application/json");
+                        resp.getOutputStream().write(body);
+                    }
+                };
+    }
+
+    @Benchmark
+    public MockHttpServletResponse signResponse() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(
+                new MockHttpServletRequest("GET", "/v1/statistics"),
+                response,
+                new MockFilterChain(servlet));
+        return response;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+import org.dpppt.additionalinfo.backend.ws.statistics.SplunkHttpClientFactory;
+import org.dpppt.additionalinfo.backend.ws.statistics.SplunkSearchJobClient;
+import org.dpppt.additionalinfo.backend.ws.statistics.SplunkSearchMode;
+import org.dpppt.additionalinfo.backend.ws.statistics.SplunkStatisticClient;
+import org.dpppt.additionalinfo.backend.ws.statistics.StatisticsPlausibilityFilter;
+import org.dpppt.additionalinfo.backend.ws.util.InMemoryHistoryDataService;
+import org.dpppt.additionalinfo.backend.ws.util.SplunkStandInServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full reload of the SplunkStatisticClient against the Splunk stand-in server, replaying the
+ * recorded responses. Every reload requests a backfill, so that all daily values are queried.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SplunkReloadBenchmark {
+
+    private static final String ACTIVE_APPS = "activeApps";
+    private static final String USED_AUTH_CODE_COUNT = "usedAuthCodeCount";
+    private static final String POSITIVE_TEST_COUNT = "positiveTestCount";
+    private static final String COVIDCODES_ENTERED = "covidCodesEntered";
+
+    /** latency of every search in milliseconds */
+    @Param({"0", "50"})
+    public long latencyMillis;
+
+    /** throughput of the responses in bytes per second, 0 for no limit */
+    @Param({"0", "1000000"})
+    public long bytesPerSecond;
+
+    /** execution mode of the history searches */
+    @Param({"EXPORT", "JOB"})
+    public SplunkSearchMode mode;
+
+    private SplunkStandInServer server;
+    private SplunkStatisticClient client;
+
+    @Setup
+    public void setup() {
+        LocalDate today = LocalDate.now();
+        server =
+                new SplunkStandInServer()
+                        .respond(
+                                ACTIVE_APPS,
+                                SplunkStandInServer.singleResponse(
+                                        today, Map.of("active Apps", "1800000")))
+                        .respond(
+                                USED_AUTH_CODE_COUNT,
+                                BenchmarkFixtures.splunkResponse(
+                                        BenchmarkFixtures.USED_AUTH_CODE_COUNT))
+                        .respond(
+                                POSITIVE_TEST_COUNT,
+                                BenchmarkFixtures.splunkResponse(
+                                        BenchmarkFixtures.POSITIVE_TEST_COUNT))
+                        .respond(
+                                COVIDCODES_ENTERED,
+                                SplunkStandInServer.singleResponse(
+                                        today,
+                                        Map.of(
+                                                "00_days", "120",
+                                                "01_days", "80",
+                                                "02_days", "40",
+                                                "Total", "500")))
+                        .setLatency(Duration.ofMillis(latencyMillis))
+                        .setBytesPerSecond(bytesPerSecond)
+                        .start();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CloseableHttpClient httpClient =
+                SplunkHttpClientFactory.create(
+                        8,
+                        4,
+                        Duration.ofSeconds(5),
+                        Duration.ofSeconds(30),
+                        Duration.ofSeconds(5),
+                        Duration.ofMinutes(2),
+                        Duration.ofMinutes(1),
+                        meterRegistry);
+        client =
+                new SplunkStatisticClient(
+                        new InMemoryHistoryDataService(),
+                        server.getUrl(),
+                        "user",
+                        "password",
+                        ACTIVE_APPS,
+                        USED_AUTH_CODE_COUNT,
+                        POSITIVE_TEST_COUNT,
+                        COVIDCODES_ENTERED,
+                        LocalDate.of(2020, 6, 1),
+                        0,
+                        null,
+                        Duration.ofMinutes(1),
+                        Duration.ofMinutes(10),
+                        7,
+                        Duration.ofHours(1),
+                        30,
+                        httpClient,
+                        Map.of(
+                                SplunkStatisticClient.SEARCH_USED_AUTH_CODE_COUNT,
+                                mode,
+                                SplunkStatisticClient.SEARCH_POSITIVE_TEST_COUNT,
+                                mode),
+                        new SplunkSearchJobClient(
+                                httpClient,
+                                server.getJobsUrl(),
+                                Duration.ofMillis(10),
+                                Duration.ofMillis(100),
+                                250),
+                        new StatisticsPlausibilityFilter(List.of(), meterRegistry),
+                        meterRegistry);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.shutdown();
+        server.close();
+    }
+
+    @Benchmark
+    public Statistics reload() {
+        client.requestBackfill();
+        return client.getStatistics();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.dpppt.additionalinfo.backend.ws.statistics.SplunkResponseParser;
+import org.dpppt.additionalinfo.backend.ws.statistics.SplunkResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Parsing of recorded Splunk responses, as done for every search on reload */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SplunkResponseParserBenchmark {
+
+    @Param({BenchmarkFixtures.POSITIVE_TEST_COUNT, BenchmarkFixtures.USED_AUTH_CODE_COUNT})
+    public String fixture;
+
+    private byte[] response;
+
+    @Setup
+    public void setup() {
+        response = BenchmarkFixtures.splunkResponse(fixture);
+    }
+
+    @Benchmark
+    public List<SplunkResult> parseDescendingByTime() throws Exception {
+        return SplunkResponseParser.parseDescendingByTime(new ByteArrayInputStream(response));
+    }
+}
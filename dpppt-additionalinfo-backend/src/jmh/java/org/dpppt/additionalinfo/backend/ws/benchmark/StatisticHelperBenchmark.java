@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+import org.dpppt.additionalinfo.backend.ws.statistics.StatisticHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Computation of the rolling averages over the full history, as done on every reload */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatisticHelperBenchmark {
+
+    private Statistics statistics;
+
+    @Setup
+    public void setup() {
+        statistics = BenchmarkFixtures.statistics();
+    }
+
+    @Benchmark
+    public Statistics calculateRollingAverage() {
+        // the averages are overwritten on every invocation, so the statistics can be reused
+        StatisticHelper.calculateRollingAverage(statistics);
+        return statistics;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+import org.dpppt.additionalinfo.backend.ws.snapshot.StatisticsRepresentation;
+import org.dpppt.additionalinfo.backend.ws.snapshot.StatisticsSnapshot;
+import org.dpppt.additionalinfo.backend.ws.snapshot.StatisticsSnapshotFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Serialization of the statistics: plain Jackson serialization, the creation of a snapshot on
+ * every reload (serialization, compression, hashing and signing) and the per request work of
+ * serving a snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatisticsSerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+    private Statistics statistics;
+    private StatisticsSnapshotFactory snapshotFactory;
+    private StatisticsSnapshot snapshot;
+    private HttpHeaders gzipRequestHeaders;
+
+    @Setup
+    public void setup() {
+        objectMapper = BenchmarkFixtures.objectMapper();
+        statistics = BenchmarkFixtures.statistics();
+        snapshotFactory =
+                new StatisticsSnapshotFactory(
+                        objectMapper,
+                        BenchmarkFixtures.keyPair(),
+                        Duration.ofDays(1),
+                        List.of(),
+                        Duration.ofHours(1),
+                        new SimpleMeterRegistry());
+        snapshot = snapshotFactory.create(statistics);
+        gzipRequestHeaders = new HttpHeaders();
+        gzipRequestHeaders.set(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate, br");
+    }
+
+    @Benchmark
+    public byte[] serializeStatistics() throws Exception {
+        return objectMapper.writeValueAsBytes(statistics);
+    }
+
+    @Benchmark
+    public StatisticsSnapshot createSnapshot() {
+        return snapshotFactory.create(statistics);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public StatisticsRepresentation serveSnapshot() {
+        if (snapshot.isNotModified(gzipRequestHeaders)) {
+            return null;
+        }
+        return snapshot.select(gzipRequestHeaders);
+    }
+}
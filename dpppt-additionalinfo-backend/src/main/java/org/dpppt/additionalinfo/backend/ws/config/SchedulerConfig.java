@@ -1,12 +1,16 @@
 package org.dpppt.additionalinfo.backend.ws.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.TimeZone;
 import org.dpppt.additionalinfo.backend.ws.controller.DppptAdditionalInfoController;
 import org.dpppt.additionalinfo.backend.ws.data.HistoryDataService;
+import org.dpppt.additionalinfo.backend.ws.statistics.RefreshTrigger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.SchedulingConfigurer;
@@ -20,23 +24,55 @@ public class SchedulerConfig implements SchedulingConfigurer {
 
     @Autowired DppptAdditionalInfoController dppptAdditionalInfoController;
     @Autowired HistoryDataService historyDataService;
-    
+    // declares the retention and the refresh interval, which the other beans use as well
+    @Autowired WSBaseConfig wsBaseConfig;
+
+    @Autowired MeterRegistry meterRegistry;
+
+    // upper bound of the random per-instance offset of the refreshes
+    @Value("${ws.statistics.refresh.jitter:PT2M}")
+    Duration refreshJitter;
+
+    @Value("${ws.statistics.refresh.retrydelay:PT1M}")
+    Duration refreshRetryDelay;
+
+    @Value("${ws.statistics.refresh.maxretrydelay:PT15M}")
+    Duration refreshMaxRetryDelay;
+
+    @Value("${ws.statistics.backfill.cron:0 30 3 * * ?}")
+    String backfillCron;
+
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
     @Override
     public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
-        // refresh the statistics every full hour.
+        // refresh the statistics every interval (by default every full hour plus a per-instance
+        // jitter), failed refreshes are retried with backoff
+        RefreshTrigger refreshTrigger =
+                new RefreshTrigger(
+                        "statistics",
+                        wsBaseConfig.getRefreshInterval(),
+                        refreshJitter,
+                        refreshRetryDelay,
+                        refreshMaxRetryDelay,
+                        meterRegistry);
+        taskRegistrar.addTriggerTask(
+                refreshTrigger.task(dppptAdditionalInfoController::reloadStats), refreshTrigger);
+
+        // reload the full history every night, all other reloads only query the most recent days.
+        // Only the instance holding the reload lease backfills. If the backfill fails, it is done
+        // by the next (retried) refresh of that instance.
         taskRegistrar.addCronTask(
                 new CronTask(
                         new Runnable() {
 
                             @Override
                             public void run() {
-                                dppptAdditionalInfoController.reloadStats();
+                                dppptAdditionalInfoController.reloadStats(true);
                             }
                         },
-                        new CronTrigger("0 0 * * * ?", TimeZone.getTimeZone("Europe/Zurich"))));
-        
+                        new CronTrigger(backfillCron, TimeZone.getTimeZone("Europe/Zurich"))));
+
         // remove old data every night
         taskRegistrar.addCronTask(
                 new CronTask(
@@ -44,7 +80,8 @@ public class SchedulerConfig implements SchedulingConfigurer {
 
                             @Override
                             public void run() {
-                            	LocalDate day = LocalDate.now().minusDays(30);
+                            	int retentionDays = wsBaseConfig.getHistoryRetentionDays();
+                            	LocalDate day = LocalDate.now().minusDays(retentionDays);
                             	logger.info("Remove history data before: " + day.toString());
                             	historyDataService.removeBefore(day);
                             }
@@ -11,9 +11,13 @@
 package org.dpppt.additionalinfo.backend.ws.config;
 
 import io.jsonwebtoken.SignatureAlgorithm;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import java.io.ByteArrayInputStream;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.file.Path;
 import java.security.KeyFactory;
 import java.security.KeyPair;
 import java.security.PrivateKey;
@@ -22,30 +26,55 @@ import java.security.Security;
 import java.security.cert.CertificateFactory;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 import javax.sql.DataSource;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.util.io.pem.PemObject;
 import org.bouncycastle.util.io.pem.PemReader;
 import org.dpppt.additionalinfo.backend.ws.controller.DppptAdditionalInfoController;
+import org.dpppt.additionalinfo.backend.ws.data.CachingHistoryDataService;
+import org.dpppt.additionalinfo.backend.ws.data.FileStatisticsSnapshotDataServiceImpl;
 import org.dpppt.additionalinfo.backend.ws.data.HistoryDataService;
 import org.dpppt.additionalinfo.backend.ws.data.JdbcHistoryDataServiceImpl;
+import org.dpppt.additionalinfo.backend.ws.data.JdbcStatisticsSnapshotDataServiceImpl;
+import org.dpppt.additionalinfo.backend.ws.data.ReloadLeaseDataService;
+import org.dpppt.additionalinfo.backend.ws.data.StatisticsSnapshotDataService;
+import org.dpppt.additionalinfo.backend.ws.snapshot.PresignedResponseWrapperFilter;
+import org.dpppt.additionalinfo.backend.ws.snapshot.StatisticsSnapshot;
+import org.dpppt.additionalinfo.backend.ws.snapshot.StatisticsSnapshotFactory;
+import org.dpppt.additionalinfo.backend.ws.statistics.BoundsRule;
+import org.dpppt.additionalinfo.backend.ws.statistics.DayOverDayRule;
 import org.dpppt.additionalinfo.backend.ws.statistics.MockStatisticClient;
+import org.dpppt.additionalinfo.backend.ws.statistics.PlausibilityField;
+import org.dpppt.additionalinfo.backend.ws.statistics.RelativeChangeRule;
+import org.dpppt.additionalinfo.backend.ws.statistics.SplunkHttpClientFactory;
+import org.dpppt.additionalinfo.backend.ws.statistics.SplunkSearchJobClient;
+import org.dpppt.additionalinfo.backend.ws.statistics.SplunkSearchMode;
 import org.dpppt.additionalinfo.backend.ws.statistics.SplunkStatisticClient;
 import org.dpppt.additionalinfo.backend.ws.statistics.StatisticClient;
+import org.dpppt.additionalinfo.backend.ws.statistics.StatisticsPlausibilityFilter;
+import org.dpppt.additionalinfo.backend.ws.statistics.ZScoreRule;
 import org.dpppt.backend.shared.interceptor.HeaderInjector;
 import org.dpppt.backend.shared.security.filter.ResponseWrapperFilter;
 import org.flywaydb.core.Flyway;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.DependsOn;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -89,9 +118,122 @@ public abstract class WSBaseConfig implements WebMvcConfigurer {
     @Value("${ws.statistics.splunk.enddaysback:0}")
     Integer queryEndDaysBack;
 
+    @Value("${ws.statistics.splunk.querytimeout:PT2M}")
+    Duration queryTimeout;
+
+    // number of recent days which are queried from splunk on every reload, as their values may
+    // still change. The values of all older days are loaded from the database.
+    @Value("${ws.statistics.splunk.incrementaldays:7}")
+    int queryIncrementalDays;
+
+    // number of days the seven day average history is kept, older days are removed every night
+    // by SchedulerConfig
+    @Value("${ws.statistics.history.retentiondays:30}")
+    int historyRetentionDays;
+
+    // how long an instance keeps the exclusive right to reload the statistics. Must be shorter
+    // than the refresh interval, but should be longer than a reload.
+    @Value("${ws.statistics.reload.lease.duration:PT50M}")
+    Duration reloadLeaseDuration;
+
+    // interval of the refreshes scheduled by SchedulerConfig. The active apps are queried on every
+    // refresh, the daily values only every ws.statistics.splunk.history.refreshinterval.
+    @Value("${ws.statistics.refresh.interval:PT1H}")
+    Duration refreshInterval;
+
+    // when the instances without the reload lease check once for the snapshot of the reloading
+    // instance, in case they missed its notification. Should be longer than a reload.
+    @Value("${ws.statistics.reload.follower.checkdelay:PT10M}")
+    Duration followerCheckDelay;
+
+    // minimal time between two reloads which query the daily values. Reloads in between only
+    // query the active apps, see ws.statistics.refresh.interval in SchedulerConfig
+    @Value("${ws.statistics.splunk.history.refreshinterval:PT1H}")
+    Duration historyRefreshInterval;
+
+    // pool of the splunk http client. All searches go to the same host, so the connections per
+    // route should be at least the number of parallel searches.
+    @Value("${ws.statistics.splunk.http.maxconnections:8}")
+    int splunkMaxConnections;
+
+    @Value("${ws.statistics.splunk.http.maxconnectionsperroute:4}")
+    int splunkMaxConnectionsPerRoute;
+
+    @Value("${ws.statistics.splunk.http.connecttimeout:PT30S}")
+    Duration splunkConnectTimeout;
+
+    @Value("${ws.statistics.splunk.http.sockettimeout:PT30S}")
+    Duration splunkSocketTimeout;
+
+    // how long a search waits for a free connection of the pool
+    @Value("${ws.statistics.splunk.http.connectionrequesttimeout:PT10S}")
+    Duration splunkConnectionRequestTimeout;
+
+    // upper bound of how long a connection is kept alive, should be shorter than the idle timeout
+    // of splunk and of any proxy in between
+    @Value("${ws.statistics.splunk.http.keepalive:PT2M}")
+    Duration splunkKeepAlive;
+
+    // idle connections are closed after this time
+    @Value("${ws.statistics.splunk.http.idletimeout:PT1M}")
+    Duration splunkIdleTimeout;
+
+    // execution mode of every search, EXPORT (one blocking request) or JOB (search job whose
+    // results are fetched in pages, for searches which take longer than the socket timeout)
+    @Value("${ws.statistics.splunk.activeapps.mode:EXPORT}")
+    SplunkSearchMode activeAppsMode;
+
+    @Value("${ws.statistics.splunk.usedauthcodecount.mode:EXPORT}")
+    SplunkSearchMode usedAuthCodeCountMode;
+
+    @Value("${ws.statistics.splunk.positivetestcount.mode:EXPORT}")
+    SplunkSearchMode positiveTestCountMode;
+
+    @Value("${ws.statistics.splunk.covidCodesEnteredAfterXDaysOnsetOfSymptoms.mode:EXPORT}")
+    SplunkSearchMode covidCodesEnteredAfterXDaysOnsetOfSymptomsMode;
+
+    // search jobs endpoint, defaults to the url without /export
+    @Value("${ws.statistics.splunk.jobs.url:}")
+    String splunkJobsUrl;
+
+    @Value("${ws.statistics.splunk.jobs.pollinitialdelay:PT1S}")
+    Duration splunkJobsPollInitialDelay;
+
+    @Value("${ws.statistics.splunk.jobs.pollmaxdelay:PT10S}")
+    Duration splunkJobsPollMaxDelay;
+
+    @Value("${ws.statistics.splunk.jobs.pagesize:1000}")
+    int splunkJobsPageSize;
+
+    // timeout of the searches in JOB mode, which are expected to run longer than the querytimeout
+    @Value("${ws.statistics.splunk.jobs.querytimeout:PT15M}")
+    Duration splunkJobsQueryTimeout;
+
     @Value("${ws.statistics.cachecontrol:PT1H}")
     Duration cacheControl;
 
+    // reloaded active users below this share of the accepted value are implausible
+    @Value("${ws.statistics.plausibility.activeusers.minratio:0.5}")
+    double plausibilityActiveUsersMinRatio;
+
+    // change of the new infections compared to the day before
+    @Value("${ws.statistics.plausibility.dayoverday.maxrelativechange:4}")
+    double plausibilityDayOverDayMaxRelativeChange;
+
+    @Value("${ws.statistics.plausibility.dayoverday.minabsolutechange:500}")
+    double plausibilityDayOverDayMinAbsoluteChange;
+
+    // outliers of the latest day compared to the days before
+    @Value("${ws.statistics.plausibility.zscore.window:28}")
+    int plausibilityZScoreWindow;
+
+    @Value("${ws.statistics.plausibility.zscore.max:6}")
+    double plausibilityMaxZScore;
+
+    // wait for the first reload during startup instead of running it in the background
+    @Value("${ws.statistics.startup.awaitreload:false}")
+    boolean awaitInitialReload;
+
     abstract String getPublicKey();
 
     abstract String getPrivateKey();
@@ -106,6 +248,14 @@ public abstract class WSBaseConfig implements WebMvcConfigurer {
 
     public abstract String getDbType();
 
+    int getHistoryRetentionDays() {
+        return historyRetentionDays;
+    }
+
+    Duration getRefreshInterval() {
+        return refreshInterval;
+    }
+
     @Bean
     @DependsOn({"flyway"})
     @ConditionalOnProperty(
@@ -117,8 +267,23 @@ public abstract class WSBaseConfig implements WebMvcConfigurer {
                 "positivetestcount.query",
                 "covidCodesEnteredAfterXDaysOnsetOfSymptoms.query"
             })
-    public SplunkStatisticClient splunkStatisticsClient(HistoryDataService historyDataService) {
+    public SplunkStatisticClient splunkStatisticsClient(
+            HistoryDataService historyDataService,
+            StatisticsPlausibilityFilter statisticsPlausibilityFilter,
+            MeterRegistry meterRegistry) {
         logger.info("Creating Splunk statistics client");
+        CloseableHttpClient httpClient =
+                SplunkHttpClientFactory.create(
+                        splunkMaxConnections,
+                        splunkMaxConnectionsPerRoute,
+                        splunkConnectTimeout,
+                        splunkSocketTimeout,
+                        splunkConnectionRequestTimeout,
+                        splunkKeepAlive,
+                        splunkIdleTimeout,
+                        meterRegistry);
+        String jobsUrl =
+                splunkJobsUrl.isEmpty() ? splunkUrl.replaceFirst("/export/?$", "") : splunkJobsUrl;
         return new SplunkStatisticClient(
                 historyDataService,
                 splunkUrl,
@@ -130,31 +295,208 @@ public abstract class WSBaseConfig implements WebMvcConfigurer {
                 queryCovidCodesEnteredAfterXDaysOnsetOfSymptoms,
                 queryStartDate,
                 queryEndDaysBack,
-                activeAppsOverride);
+                activeAppsOverride,
+                queryTimeout,
+                splunkJobsQueryTimeout,
+                queryIncrementalDays,
+                historyRefreshInterval,
+                historyRetentionDays,
+                httpClient,
+                Map.of(
+                        SplunkStatisticClient.SEARCH_ACTIVE_APPS,
+                        activeAppsMode,
+                        SplunkStatisticClient.SEARCH_USED_AUTH_CODE_COUNT,
+                        usedAuthCodeCountMode,
+                        SplunkStatisticClient.SEARCH_POSITIVE_TEST_COUNT,
+                        positiveTestCountMode,
+                        SplunkStatisticClient.SEARCH_COVIDCODES_ENTERED_AFTER_ONSET,
+                        covidCodesEnteredAfterXDaysOnsetOfSymptomsMode),
+                new SplunkSearchJobClient(
+                        httpClient,
+                        jobsUrl,
+                        splunkJobsPollInitialDelay,
+                        splunkJobsPollMaxDelay,
+                        splunkJobsPageSize),
+                statisticsPlausibilityFilter,
+                meterRegistry);
     }
 
     @Bean
     @DependsOn({"flyway"})
     @ConditionalOnMissingBean
-    public StatisticClient mockStatisticsClient(HistoryDataService historyDataService) {
+    public StatisticClient mockStatisticsClient(
+            HistoryDataService historyDataService,
+            StatisticsPlausibilityFilter statisticsPlausibilityFilter) {
         logger.info("Creating Mock statistics client");
-        return new MockStatisticClient(historyDataService);
+        return new MockStatisticClient(historyDataService, statisticsPlausibilityFilter);
+    }
+
+    @Bean
+    public HistoryDataService historyDataService(
+            DataSource dataSource, MeterRegistry meterRegistry) {
+        return new CachingHistoryDataService(
+                new JdbcHistoryDataServiceImpl(dataSource), historyRetentionDays, meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "ws.statistics.snapshot", name = "file")
+    public StatisticsSnapshotDataService fileStatisticsSnapshotDataService(
+            @Value("${ws.statistics.snapshot.file}") Path file) {
+        logger.info("Persisting statistics snapshots in file: " + file);
+        return new FileStatisticsSnapshotDataServiceImpl(file);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public StatisticsSnapshotDataService statisticsSnapshotDataService(DataSource dataSource) {
+        return new JdbcStatisticsSnapshotDataServiceImpl(dataSource);
     }
 
     @Bean
-    public HistoryDataService historyDataService(DataSource dataSource) {
-        return new JdbcHistoryDataServiceImpl(dataSource);
+    public StatisticsSnapshotFactory statisticsSnapshotFactory(MeterRegistry meterRegistry) {
+        // use the same object mapper configuration as the spring mvc message converters
+        return new StatisticsSnapshotFactory(
+                Jackson2ObjectMapperBuilder.json().build(),
+                getKeyPair(algorithm),
+                Duration.ofDays(retentionDays),
+                protectedHeaders,
+                cacheControl,
+                meterRegistry);
+    }
+
+    @Bean
+    public StatisticsPlausibilityFilter statisticsPlausibilityFilter(MeterRegistry meterRegistry) {
+        double unbounded = Double.MAX_VALUE;
+        return new StatisticsPlausibilityFilter(
+                List.of(
+                        new BoundsRule(PlausibilityField.TOTAL_ACTIVE_USERS, 0, unbounded),
+                        new RelativeChangeRule(
+                                PlausibilityField.TOTAL_ACTIVE_USERS,
+                                plausibilityActiveUsersMinRatio,
+                                unbounded),
+                        new BoundsRule(PlausibilityField.TOTAL_COVIDCODES_ENTERED, 0, unbounded),
+                        new BoundsRule(
+                                PlausibilityField.COVIDCODES_ENTERED_0_TO_2D_PREV_WEEK, 0, 1),
+                        new BoundsRule(
+                                PlausibilityField.NEW_INFECTIONS_SEVEN_DAY_AVG, 0, unbounded),
+                        new BoundsRule(
+                                PlausibilityField.NEW_INFECTIONS_SEVEN_DAY_AVG_REL_PREV_WEEK,
+                                -1,
+                                unbounded),
+                        new BoundsRule(PlausibilityField.NEW_INFECTIONS, 0, unbounded),
+                        new DayOverDayRule(
+                                PlausibilityField.NEW_INFECTIONS,
+                                plausibilityDayOverDayMaxRelativeChange,
+                                plausibilityDayOverDayMinAbsoluteChange),
+                        new ZScoreRule(
+                                PlausibilityField.NEW_INFECTIONS,
+                                plausibilityZScoreWindow,
+                                plausibilityMaxZScore),
+                        new BoundsRule(PlausibilityField.COVIDCODES_ENTERED, 0, unbounded),
+                        new ZScoreRule(
+                                PlausibilityField.COVIDCODES_ENTERED,
+                                plausibilityZScoreWindow,
+                                plausibilityMaxZScore)),
+                meterRegistry);
+    }
+
+    // runs the tasks of SchedulerConfig and the snapshot checks of the controller on a single
+    // thread, like the scheduler which @EnableScheduling creates otherwise
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler() {
+        ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+        taskScheduler.setThreadNamePrefix("scheduling-");
+        return taskScheduler;
     }
 
     @Bean()
+    @DependsOn({"flyway"})
     public DppptAdditionalInfoController dppptAdditionalInfoController(
-            StatisticClient statisticClient) {
-        return new DppptAdditionalInfoController(statisticClient, cacheControl);
+            StatisticClient statisticClient,
+            StatisticsPlausibilityFilter statisticsPlausibilityFilter,
+            StatisticsSnapshotFactory statisticsSnapshotFactory,
+            StatisticsSnapshotDataService statisticsSnapshotDataService,
+            ObjectProvider<ReloadLeaseDataService> reloadLeaseDataService,
+            TaskScheduler taskScheduler) {
+        ReloadLeaseDataService leases = reloadLeaseDataService.getIfAvailable();
+        if (leases != null && reloadLeaseDuration.compareTo(refreshInterval) >= 0) {
+            // otherwise no other instance can take over the next refresh if the holder stopped
+            throw new IllegalStateException(
+                    "ws.statistics.reload.lease.duration ("
+                            + reloadLeaseDuration
+                            + ") must be shorter than ws.statistics.refresh.interval ("
+                            + refreshInterval
+                            + ")");
+        }
+        return new DppptAdditionalInfoController(
+                statisticClient,
+                statisticsPlausibilityFilter,
+                statisticsSnapshotFactory,
+                statisticsSnapshotDataService,
+                leases,
+                reloadLeaseDuration,
+                taskScheduler,
+                followerCheckDelay,
+                awaitInitialReload);
+    }
+
+    @Bean
+    public HealthIndicator statisticsHealthIndicator(
+            DppptAdditionalInfoController dppptAdditionalInfoController) {
+        // not ready to serve traffic before statistics are available
+        return () ->
+                dppptAdditionalInfoController.hasStatistics()
+                        ? Health.up().build()
+                        : Health.outOfService().withDetail("statistics", "not loaded").build();
+    }
+
+    @Bean
+    public MeterBinder statisticsSnapshotMetrics(
+            DppptAdditionalInfoController dppptAdditionalInfoController) {
+        return meterRegistry -> {
+            Gauge.builder(
+                            "statistics.snapshot.age",
+                            dppptAdditionalInfoController,
+                            controller -> {
+                                StatisticsSnapshot snapshot = controller.getSnapshot();
+                                return snapshot != null
+                                        ? Duration.between(snapshot.getCreatedAt(), Instant.now())
+                                                .toSeconds()
+                                        : Double.NaN;
+                            })
+                    .description("time since the served statistics were created")
+                    .baseUnit("seconds")
+                    .register(meterRegistry);
+            for (String encoding : List.of("identity", "gzip")) {
+                Gauge.builder(
+                                "statistics.snapshot.size",
+                                dppptAdditionalInfoController,
+                                controller -> {
+                                    StatisticsSnapshot snapshot = controller.getSnapshot();
+                                    if (snapshot == null) {
+                                        return Double.NaN;
+                                    }
+                                    return "gzip".equals(encoding)
+                                            ? snapshot.getGzip().getBody().length
+                                            : snapshot.getIdentity().getBody().length;
+                                })
+                        .tag("encoding", encoding)
+                        .description("size of the served statistics")
+                        .baseUnit("bytes")
+                        .register(meterRegistry);
+            }
+        };
     }
 
     @Bean
-    public ResponseWrapperFilter hashFilter() {
-        return new ResponseWrapperFilter(getKeyPair(algorithm), retentionDays, protectedHeaders);
+    public ResponseWrapperFilter hashFilter(MeterRegistry meterRegistry) {
+        // the statistics are served pre-signed, see StatisticsSnapshot
+        return new PresignedResponseWrapperFilter(
+                getKeyPair(algorithm),
+                retentionDays,
+                protectedHeaders,
+                List.of("/v1/statistics"),
+                meterRegistry);
     }
 
     @Bean
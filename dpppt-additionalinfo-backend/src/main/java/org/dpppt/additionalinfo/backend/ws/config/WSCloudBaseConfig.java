@@ -10,10 +10,16 @@
 
 package org.dpppt.additionalinfo.backend.ws.config;
 
+import java.time.Duration;
 import java.util.Map;
 import javax.sql.DataSource;
+import org.dpppt.additionalinfo.backend.ws.controller.DppptAdditionalInfoController;
+import org.dpppt.additionalinfo.backend.ws.data.JdbcReloadLeaseDataServiceImpl;
+import org.dpppt.additionalinfo.backend.ws.data.JdbcStatisticsSnapshotListener;
+import org.dpppt.additionalinfo.backend.ws.data.ReloadLeaseDataService;
 import org.flywaydb.core.Flyway;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cloud.CloudFactory;
 import org.springframework.cloud.service.PooledServiceConnectorConfig.PoolConfig;
 import org.springframework.cloud.service.relational.DataSourceConfig;
@@ -36,6 +42,15 @@ public abstract class WSCloudBaseConfig extends WSBaseConfig {
     @Value("${datasource.leakDetectionThreshold:0}")
     int dataSourceLeakDetectionThreshold;
 
+    // the snapshot listener keeps one connection of the pool (datasource.maximumPoolSize) for
+    // itself while ws.statistics.snapshot.notify.enabled, so one less is left for the requests.
+    // It checks every polltimeout whether it was closed and reconnects after retrydelay.
+    @Value("${ws.statistics.snapshot.notify.polltimeout:PT10S}")
+    Duration snapshotNotifyPollTimeout;
+
+    @Value("${ws.statistics.snapshot.notify.retrydelay:PT30S}")
+    Duration snapshotNotifyRetryDelay;
+
     @Bean
     @Override
     public DataSource dataSource() {
@@ -63,6 +78,39 @@ public abstract class WSCloudBaseConfig extends WSBaseConfig {
         return flyWay;
     }
 
+    @Bean
+    @ConditionalOnProperty(
+            prefix = "ws.statistics.reload.lease",
+            name = "enabled",
+            havingValue = "true",
+            matchIfMissing = true)
+    public ReloadLeaseDataService reloadLeaseDataService(
+            @Value("${CF_INSTANCE_GUID:#{T(java.util.UUID).randomUUID().toString()}}")
+                    String instanceId) {
+        // all instances share the database, only the lease holder queries splunk
+        logger.info("Reload statistics only while holding the reload lease: " + instanceId);
+        return new JdbcReloadLeaseDataServiceImpl(dataSource(), instanceId);
+    }
+
+    @Bean
+    @ConditionalOnProperty(
+            prefix = "ws.statistics.snapshot.notify",
+            name = "enabled",
+            havingValue = "true",
+            matchIfMissing = true)
+    public JdbcStatisticsSnapshotListener statisticsSnapshotListener(
+            DppptAdditionalInfoController dppptAdditionalInfoController) {
+        // take new snapshots of the reloading instance right away instead of on the next reload
+        JdbcStatisticsSnapshotListener listener =
+                new JdbcStatisticsSnapshotListener(
+                        dataSource(),
+                        dppptAdditionalInfoController::onSnapshotStored,
+                        snapshotNotifyPollTimeout,
+                        snapshotNotifyRetryDelay);
+        listener.start();
+        return listener;
+    }
+
     @Override
     public String getDbType() {
         return "pgsql";
@@ -11,15 +11,27 @@
 package org.dpppt.additionalinfo.backend.ws.controller;
 
 import java.time.Duration;
+import java.time.Instant;
+import org.dpppt.additionalinfo.backend.ws.data.ReloadLeaseDataService;
+import org.dpppt.additionalinfo.backend.ws.data.StatisticsSnapshotDataService;
+import org.dpppt.additionalinfo.backend.ws.data.StoredStatisticsSnapshot;
 import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+import org.dpppt.additionalinfo.backend.ws.snapshot.StatisticsRepresentation;
+import org.dpppt.additionalinfo.backend.ws.snapshot.StatisticsSnapshot;
+import org.dpppt.additionalinfo.backend.ws.snapshot.StatisticsSnapshotFactory;
+import org.dpppt.additionalinfo.backend.ws.snapshot.StatisticsSnapshotHolder;
 import org.dpppt.additionalinfo.backend.ws.statistics.StatisticClient;
+import org.dpppt.additionalinfo.backend.ws.statistics.StatisticsPlausibilityFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 
@@ -31,14 +43,74 @@ public class DppptAdditionalInfoController {
             LoggerFactory.getLogger(DppptAdditionalInfoController.class);
 
     private final StatisticClient statisticClient;
-    private final Duration cacheControl;
+    private final StatisticsPlausibilityFilter plausibilityFilter;
+    private final StatisticsSnapshotFactory snapshotFactory;
+    private final StatisticsSnapshotDataService snapshotDataService;
+    private final ReloadLeaseDataService reloadLeaseDataService;
+    private final Duration reloadLeaseDuration;
+    private final TaskScheduler taskScheduler;
+    private final Duration followerCheckDelay;
 
-    private Statistics currentStatistics = new Statistics();
+    private static final String RELOAD_LEASE = "statistics-reload";
 
-    public DppptAdditionalInfoController(StatisticClient statisticClient, Duration cacheControl) {
+    private final StatisticsSnapshotHolder snapshotHolder = new StatisticsSnapshotHolder();
+    // false if another instance may have reloaded since the last reload of this instance
+    private volatile boolean holdsReloadLease = false;
+
+    /**
+     * Restores the last persisted statistics and starts the first reload. Unless
+     * awaitInitialReload is set, the reload runs in the background so that the startup does not
+     * depend on the statistic source. Until statistics are available, {@link #hasStatistics()}
+     * returns false and the statistics endpoint responds with 503.
+     *
+     * <p>If a reloadLeaseDataService is given, only the instance holding the reload lease loads the
+     * statistics from the statistic client. All other instances take the snapshot persisted by
+     * that instance, either when they are notified (see {@link #onSnapshotStored(Instant)}) or
+     * by a single check after the followerCheckDelay.
+     *
+     * @param statisticClient
+     * @param plausibilityFilter used by the statistic client, checks the reloaded statistics
+     *     against the published ones
+     * @param snapshotFactory
+     * @param snapshotDataService
+     * @param reloadLeaseDataService shared reload lease or null to always reload
+     * @param reloadLeaseDuration how long the reload lease is held, should be a bit shorter than
+     *     the reload interval
+     * @param taskScheduler runs the check of an instance without the reload lease for the snapshot
+     *     of the reloading instance
+     * @param followerCheckDelay delay of that check, should be longer than a reload
+     * @param awaitInitialReload
+     */
+    public DppptAdditionalInfoController(
+            StatisticClient statisticClient,
+            StatisticsPlausibilityFilter plausibilityFilter,
+            StatisticsSnapshotFactory snapshotFactory,
+            StatisticsSnapshotDataService snapshotDataService,
+            ReloadLeaseDataService reloadLeaseDataService,
+            Duration reloadLeaseDuration,
+            TaskScheduler taskScheduler,
+            Duration followerCheckDelay,
+            boolean awaitInitialReload) {
         this.statisticClient = statisticClient;
-        this.cacheControl = cacheControl;
-        reloadStats();
+        this.plausibilityFilter = plausibilityFilter;
+        this.snapshotFactory = snapshotFactory;
+        this.snapshotDataService = snapshotDataService;
+        this.reloadLeaseDataService = reloadLeaseDataService;
+        this.reloadLeaseDuration = reloadLeaseDuration;
+        this.taskScheduler = taskScheduler;
+        this.followerCheckDelay = followerCheckDelay;
+        StatisticsSnapshot restored = restoreSnapshot();
+        if (restored != null) {
+            snapshotHolder.publish(restored);
+            plausibilityFilter.setAccepted(restored.getStatistics());
+        }
+        if (awaitInitialReload) {
+            reloadStats();
+        } else {
+            Thread reload = new Thread(this::reloadStats, "statistics-initial-reload");
+            reload.setDaemon(true);
+            reload.start();
+        }
     }
 
     @CrossOrigin(origins = {"https://editor.swagger.io"})
@@ -49,34 +121,232 @@ public class DppptAdditionalInfoController {
 
     @CrossOrigin(origins = {"https://editor.swagger.io"})
     @GetMapping(value = "/statistics")
-    public @ResponseBody ResponseEntity<Statistics> getStatistics() {
+    public @ResponseBody ResponseEntity<byte[]> getStatistics(
+            @RequestHeader HttpHeaders requestHeaders) {
+        StatisticsSnapshot snapshot = currentSnapshot();
+        if (snapshot == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        StatisticsRepresentation representation = snapshot.select(requestHeaders);
+        if (snapshot.isNotModified(requestHeaders)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .headers(representation.getNotModifiedHeaders())
+                    .build();
+        }
         return ResponseEntity.ok()
-                .cacheControl(CacheControl.maxAge(cacheControl))
-                .body(currentStatistics);
+                .headers(representation.getHeaders())
+                .body(representation.getBody());
+    }
+
+    /** returns true as soon as statistics are available (restored or loaded) */
+    public boolean hasStatistics() {
+        return snapshotHolder.get() != null;
+    }
+
+    /** returns the currently served snapshot or null if no statistics are available yet */
+    public StatisticsSnapshot getSnapshot() {
+        return snapshotHolder.get();
+    }
+
+    private StatisticsSnapshot currentSnapshot() {
+        StatisticsSnapshot snapshot = snapshotHolder.get();
+        if (snapshot != null && snapshot.needsResigning(Instant.now())) {
+            // the statistics could not be reloaded for a long time, keep the signature valid
+            logger.info("Renew signature of statistics snapshot from {}", snapshot.getCreatedAt());
+            snapshot = snapshotHolder.replace(snapshot, snapshotFactory.resign(snapshot));
+        }
+        return snapshot;
+    }
+
+    /**
+     * reloads the statistics from the statistic client, or takes the stored snapshot if another
+     * instance holds the reload lease. Statistics with stale fields (see {@link
+     * Statistics#getStaleFields()}) are published as well, the statistic client reloads the
+     * missing values on the next call.
+     *
+     * @return false if the reload failed and should be retried
+     */
+    public boolean reloadStats() {
+        return reloadStats(false);
     }
 
-    public void reloadStats() {
+    /**
+     * like {@link #reloadStats()}
+     *
+     * @param backfill if true, the full history is reloaded (see {@link
+     *     StatisticClient#requestBackfill()}). Only requested if this instance holds the reload
+     *     lease, the instance holding it does the backfill otherwise.
+     * @return false if the reload failed and should be retried
+     */
+    public boolean reloadStats(boolean backfill) {
+        if (!acquireReloadLease()) {
+            logger.info("Statistics are reloaded by another instance");
+            holdsReloadLease = false;
+            scheduleStoredSnapshotCheck();
+            return true;
+        }
+        if (!holdsReloadLease) {
+            // the other instance upserted values which this instance may have cached
+            statisticClient.invalidateCaches();
+            holdsReloadLease = true;
+        }
+        if (backfill) {
+            statisticClient.requestBackfill();
+        }
         logger.info("Refresh statistics");
         try {
+            // implausible values were already reverted by the plausibility filter of the client
             Statistics newStatistics = statisticClient.getStatistics();
-            ignoreImplausableUpdates(newStatistics);
-            currentStatistics = newStatistics;
-            logger.info("Successfully refreshed statistics");
+            if (!newStatistics.getRejectedFields().isEmpty()) {
+                logger.warn("Implausible statistics kept: {}", newStatistics.getRejectedFields());
+            }
+            StatisticsSnapshot snapshot =
+                    snapshotHolder.publish(snapshotFactory.create(newStatistics));
+            if (newStatistics.getStaleFields().isEmpty()) {
+                logger.info("Successfully refreshed statistics, version {}", snapshot.getVersion());
+            } else {
+                // the failed sources are loaded again by the next reload
+                logger.warn(
+                        "Partially refreshed statistics, version {}, stale fields: {}",
+                        snapshot.getVersion(),
+                        newStatistics.getStaleFields());
+            }
+            persistSnapshot(snapshot);
+            return true;
         } catch (Exception e) {
             logger.error("Could not load statistics: ", e);
+            // let another instance try
+            releaseReloadLease();
+            holdsReloadLease = false;
+            return false;
+        }
+    }
+
+    /**
+     * publishes the persisted snapshot if it is newer than the current one, e.g. if it was
+     * created by another instance
+     *
+     * @return false if the stored snapshot could not be loaded
+     */
+    public boolean refreshFromStoredSnapshot() {
+        try {
+            StoredStatisticsSnapshot stored = snapshotDataService.findLatestSnapshot();
+            StatisticsSnapshot current = snapshotHolder.get();
+            if (stored == null
+                    || (current != null && !stored.getCreatedAt().isAfter(current.getCreatedAt()))) {
+                logger.info("No newer statistics snapshot stored");
+                return true;
+            }
+            // a reload of this instance may publish a newer snapshot in the meantime
+            StatisticsSnapshot snapshot =
+                    snapshotHolder.publishIfNewer(
+                            snapshotFactory.restore(stored.getStatistics(), stored.getCreatedAt()));
+            if (snapshot == null) {
+                logger.info("Newer statistics published while restoring the stored snapshot");
+                return true;
+            }
+            // the reloads of this instance are checked against the snapshot of the other one
+            plausibilityFilter.setAccepted(snapshot.getStatistics());
+            logger.info(
+                    "Took statistics snapshot from {}, version {}",
+                    stored.getCreatedAt(),
+                    snapshot.getVersion());
+            return true;
+        } catch (Exception e) {
+            logger.error("Could not load stored statistics snapshot: ", e);
+            return false;
         }
     }
 
-    private void ignoreImplausableUpdates(Statistics newStatistics) {
-        // don't update cached statistics if an updated value seems implausible
+    /**
+     * checks once after the followerCheckDelay whether the instance holding the reload lease stored
+     * a newer snapshot, in case the notification was missed. The reload is usually still running
+     * when this instance finds the lease taken.
+     */
+    private void scheduleStoredSnapshotCheck() {
+        taskScheduler.schedule(
+                () -> {
+                    try {
+                        Instant createdAt = snapshotDataService.findLatestSnapshotCreatedAt();
+                        if (createdAt != null) {
+                            onSnapshotStored(createdAt);
+                        }
+                    } catch (Exception e) {
+                        logger.error("Could not check stored statistics snapshot: ", e);
+                    }
+                },
+                Instant.now().plus(followerCheckDelay));
+    }
+
+    /**
+     * called when another instance stored a new snapshot
+     *
+     * @param createdAt the creation time of the stored snapshot or null if it is unknown
+     */
+    public void onSnapshotStored(Instant createdAt) {
+        StatisticsSnapshot current = snapshotHolder.get();
+        if (createdAt != null && current != null && !createdAt.isAfter(current.getCreatedAt())) {
+            // e.g. the snapshot stored by this instance
+            return;
+        }
+        refreshFromStoredSnapshot();
+    }
+
+    private boolean acquireReloadLease() {
+        if (reloadLeaseDataService == null) {
+            return true;
+        }
+        try {
+            return reloadLeaseDataService.tryAcquireLease(RELOAD_LEASE, reloadLeaseDuration);
+        } catch (Exception e) {
+            // rather query the statistic source more often than serve stale statistics
+            logger.error("Could not acquire reload lease, reload anyway: ", e);
+            return true;
+        }
+    }
+
+    private void releaseReloadLease() {
+        if (reloadLeaseDataService == null) {
+            return;
+        }
+        try {
+            reloadLeaseDataService.releaseLease(RELOAD_LEASE);
+        } catch (Exception e) {
+            logger.error("Could not release reload lease: ", e);
+        }
+    }
 
-        // splunk sometimes returns implausible active user numbers (especially at night)
-        Integer currentTotalActiveUsers = currentStatistics.getTotalActiveUsers();
-        if (currentTotalActiveUsers == null) {
-            currentTotalActiveUsers = 0;
+    /**
+     * restores the last persisted snapshot. If there is none, the statistics are restored from the
+     * persisted history of the statistic client.
+     *
+     * @return the restored snapshot or null
+     */
+    private StatisticsSnapshot restoreSnapshot() {
+        try {
+            StoredStatisticsSnapshot stored = snapshotDataService.findLatestSnapshot();
+            if (stored != null) {
+                logger.info("Restore statistics snapshot from {}", stored.getCreatedAt());
+                return snapshotFactory.restore(stored.getStatistics(), stored.getCreatedAt());
+            }
+            Statistics storedStatistics = statisticClient.getStoredStatistics();
+            if (storedStatistics != null) {
+                logger.info("Restore statistics from stored history");
+                return snapshotFactory.create(storedStatistics);
+            }
+        } catch (Exception e) {
+            logger.error("Could not restore statistics: ", e);
         }
-        if (newStatistics.getTotalActiveUsers() < currentTotalActiveUsers * 0.5) {
-            newStatistics.setTotalActiveUsers(currentStatistics.getTotalActiveUsers());
+        logger.info("No stored statistics available");
+        return null;
+    }
+
+    private void persistSnapshot(StatisticsSnapshot snapshot) {
+        try {
+            snapshotDataService.upsertSnapshot(
+                    snapshot.getIdentity().getBody(), snapshot.getCreatedAt());
+        } catch (Exception e) {
+            logger.error("Could not persist statistics snapshot: ", e);
         }
     }
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws.data;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.History;
+
+/**
+ * {@link HistoryDataService} which keeps the latest seven day averages in memory. The cache is
+ * keyed by day and only holds days within the retention period, older days are evicted whenever
+ * the cache is written to and when they are removed from the database. Upserts are written through
+ * to the delegate. Days without a stored average are not cached, so they are looked up again on
+ * the next request. The daily history is not cached.
+ *
+ * <p>Any cached day may change, as the recent days and the backfill are upserted again by every
+ * reload. The cache only sees the upserts of this instance, so it has to be invalidated (see
+ * {@link #invalidateCache()}) before this instance reloads after another one did.
+ */
+public class CachingHistoryDataService implements HistoryDataService {
+
+    private static final String CACHE_NAME = "sevenDayAvgHistory";
+
+    private final HistoryDataService delegate;
+    private final int retentionDays;
+    private final ConcurrentNavigableMap<LocalDate, Integer> sevenDayAvgs =
+            new ConcurrentSkipListMap<>();
+    private final Counter hits;
+    private final Counter misses;
+
+    /**
+     * @param delegate the service which actually stores the values
+     * @param retentionDays number of days before today which are kept in the cache. Should match
+     *     the retention of the database.
+     * @param meterRegistry registry for the cache metrics
+     */
+    public CachingHistoryDataService(
+            HistoryDataService delegate, int retentionDays, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.retentionDays = retentionDays;
+        this.hits =
+                Counter.builder("cache.gets")
+                        .tag("cache", CACHE_NAME)
+                        .tag("result", "hit")
+                        .description("the number of times a cached value was returned")
+                        .register(meterRegistry);
+        this.misses =
+                Counter.builder("cache.gets")
+                        .tag("cache", CACHE_NAME)
+                        .tag("result", "miss")
+                        .description("the number of times a value had to be loaded")
+                        .register(meterRegistry);
+        Gauge.builder("cache.size", sevenDayAvgs, Map::size)
+                .tag("cache", CACHE_NAME)
+                .description("the number of cached days")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void upsertLatestSevenDayAvgForDay(Integer latestSevenDayAvg, LocalDate day) {
+        delegate.upsertLatestSevenDayAvgForDay(latestSevenDayAvg, day);
+        cache(day, latestSevenDayAvg);
+        evictExpired();
+    }
+
+    @Override
+    public Integer findLatestSevenDayAvgForDay(LocalDate day) {
+        Integer cached = sevenDayAvgs.get(day);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        Integer latestSevenDayAvg = delegate.findLatestSevenDayAvgForDay(day);
+        Integer upserted = cacheLoaded(day, latestSevenDayAvg);
+        return upserted != null ? upserted : latestSevenDayAvg;
+    }
+
+    @Override
+    public void upsertLatestSevenDayAvgs(Map<LocalDate, Integer> latestSevenDayAvgs) {
+        delegate.upsertLatestSevenDayAvgs(latestSevenDayAvgs);
+        latestSevenDayAvgs.forEach(this::cache);
+        evictExpired();
+    }
+
+    @Override
+    public Map<LocalDate, Integer> findLatestSevenDayAvgs(LocalDate from, LocalDate to) {
+        // without negative entries the cache cannot tell whether a range is complete
+        misses.increment();
+        Map<LocalDate, Integer> latestSevenDayAvgs = delegate.findLatestSevenDayAvgs(from, to);
+        latestSevenDayAvgs.forEach(this::cacheLoaded);
+        return latestSevenDayAvgs;
+    }
+
+    @Override
+    public void upsertDailyHistory(List<History> history) {
+        delegate.upsertDailyHistory(history);
+    }
+
+    @Override
+    public List<History> findDailyHistory(LocalDate from, LocalDate to) {
+        return delegate.findDailyHistory(from, to);
+    }
+
+    @Override
+    public void removeBefore(LocalDate day) {
+        delegate.removeBefore(day);
+        sevenDayAvgs.headMap(day).clear();
+    }
+
+    @Override
+    public void invalidateCache() {
+        sevenDayAvgs.clear();
+    }
+
+    private void cache(LocalDate day, Integer latestSevenDayAvg) {
+        if (latestSevenDayAvg != null && !day.isBefore(retentionStart())) {
+            sevenDayAvgs.put(day, latestSevenDayAvg);
+        }
+    }
+
+    /**
+     * caches a value loaded from the delegate unless a concurrent upsert cached a value in the
+     * meantime, which is newer than the loaded one
+     *
+     * @return the value cached by the concurrent upsert or null
+     */
+    private Integer cacheLoaded(LocalDate day, Integer latestSevenDayAvg) {
+        if (latestSevenDayAvg != null && !day.isBefore(retentionStart())) {
+            return sevenDayAvgs.putIfAbsent(day, latestSevenDayAvg);
+        }
+        return null;
+    }
+
+    private void evictExpired() {
+        sevenDayAvgs.headMap(retentionStart()).clear();
+    }
+
+    private LocalDate retentionStart() {
+        return LocalDate.now().minusDays(retentionDays);
+    }
+}
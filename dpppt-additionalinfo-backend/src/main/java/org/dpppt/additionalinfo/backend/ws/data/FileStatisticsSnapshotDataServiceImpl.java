@@ -0,0 +1,64 @@
+package org.dpppt.additionalinfo.backend.ws.data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+/**
+ * Stores the statistics in a local file. The creation time is kept as the last modified time of the
+ * file.
+ */
+public class FileStatisticsSnapshotDataServiceImpl implements StatisticsSnapshotDataService {
+    private final Path file;
+
+    public FileStatisticsSnapshotDataServiceImpl(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void upsertSnapshot(byte[] statistics, Instant createdAt) {
+        try {
+            // write to a temporary file first, so that a partially written file is never read
+            Path tempFile =
+                    Files.createTempFile(file.toAbsolutePath().getParent(), "statistics", ".tmp");
+            Files.write(tempFile, statistics);
+            Files.setLastModifiedTime(tempFile, FileTime.from(createdAt));
+            Files.move(
+                    tempFile,
+                    file,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public StoredStatisticsSnapshot findLatestSnapshot() {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return new StoredStatisticsSnapshot(
+                    Files.readAllBytes(file), Files.getLastModifiedTime(file).toInstant());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Instant findLatestSnapshotCreatedAt() {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return Files.getLastModifiedTime(file).toInstant();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -11,6 +11,9 @@
 package org.dpppt.additionalinfo.backend.ws.data;
 
 import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.History;
 
 public interface HistoryDataService {
 
@@ -30,8 +33,50 @@ public interface HistoryDataService {
     Integer findLatestSevenDayAvgForDay(LocalDate day);
 
     /**
-     * remote all data before the given day
+     * upserts the latest seven day averages of all given days in one batch
+     *
+     * @param latestSevenDayAvgs by day
+     */
+    void upsertLatestSevenDayAvgs(Map<LocalDate, Integer> latestSevenDayAvgs);
+
+    /**
+     * returns the latest seven day averages for all days from (inclusive) to (exclusive). Days
+     * without a stored average are omitted.
+     *
+     * @param from
+     * @param to
+     * @return the averages by day, ordered by day
+     */
+    Map<LocalDate, Integer> findLatestSevenDayAvgs(LocalDate from, LocalDate to);
+
+    /**
+     * upserts the daily values (covidcodes entered, new infections and their seven day average) of
+     * the given days in one batch
+     *
+     * @param history
+     */
+    void upsertDailyHistory(List<History> history);
+
+    /**
+     * returns the stored daily values (covidcodes entered, new infections and their seven day
+     * average) for all days from (inclusive) to (exclusive), ordered by day. Days without stored
+     * values are omitted.
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    List<History> findDailyHistory(LocalDate from, LocalDate to);
+
+    /**
+     * remove all seven day averages before the given day
      * @param day
      */
 	void removeBefore(LocalDate day);
+
+    /**
+     * drops all values cached by this instance, e.g. because another instance may have upserted
+     * newer ones. Does nothing if nothing is cached.
+     */
+    default void invalidateCache() {}
 }
@@ -1,43 +1,33 @@
 package org.dpppt.additionalinfo.backend.ws.data;
 
 import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import javax.sql.DataSource;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.History;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.transaction.annotation.Transactional;
 
 public class JdbcHistoryDataServiceImpl implements HistoryDataService {
     private final NamedParameterJdbcTemplate jt;
-    private final SimpleJdbcInsert sevenDayAvgHistoryInsert;
+
+    private static final String UPSERT_SEVEN_DAY_AVG =
+            "insert into t_seven_day_avg_history (day, latest_seven_day_avg)"
+                    + " values (:day, :latest_seven_day_avg)"
+                    + " on conflict on constraint unique_t_seven_day_avg_history do update set"
+                    + " latest_seven_day_avg = excluded.latest_seven_day_avg";
 
     public JdbcHistoryDataServiceImpl(DataSource dataSource) {
         this.jt = new NamedParameterJdbcTemplate(dataSource);
-        this.sevenDayAvgHistoryInsert =
-                new SimpleJdbcInsert(dataSource)
-                        .withTableName("t_seven_day_avg_history")
-                        .usingGeneratedKeyColumns("pk_seven_day_avg_history_id");
     }
 
     @Override
     @Transactional(readOnly = false)
     public void upsertLatestSevenDayAvgForDay(Integer latestSevenDayAvg, LocalDate day) {
-        MapSqlParameterSource params = new MapSqlParameterSource();
-        params.addValue("latest_seven_day_avg", latestSevenDayAvg);
-        params.addValue("day", day);
-        if (findLatestSevenDayAvgForDay(day) != null) {
-            removeLatestSevenDayAvgForDay(day, false);
-        }
-        sevenDayAvgHistoryInsert.execute(params);
-    }
-
-    private void removeLatestSevenDayAvgForDay(LocalDate day, boolean deleteBefore) {
-        jt.update(
-                "delete from t_seven_day_avg_history where day "
-                        + (deleteBefore ? "<" : "=")
-                        + " :day",
-                new MapSqlParameterSource("day", day));
+        jt.update(UPSERT_SEVEN_DAY_AVG, sevenDayAvgParams(day, latestSevenDayAvg));
     }
 
     @Override
@@ -52,10 +42,98 @@ public class JdbcHistoryDataServiceImpl implements HistoryDataService {
             return null;
         }
     }
-    
+
+    @Override
+    @Transactional(readOnly = false)
+    public void upsertLatestSevenDayAvgs(Map<LocalDate, Integer> latestSevenDayAvgs) {
+        MapSqlParameterSource[] batchParams = new MapSqlParameterSource[latestSevenDayAvgs.size()];
+        int i = 0;
+        for (Map.Entry<LocalDate, Integer> entry : latestSevenDayAvgs.entrySet()) {
+            batchParams[i++] = sevenDayAvgParams(entry.getKey(), entry.getValue());
+        }
+        jt.batchUpdate(UPSERT_SEVEN_DAY_AVG, batchParams);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Map<LocalDate, Integer> findLatestSevenDayAvgs(LocalDate from, LocalDate to) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        params.addValue("from", from);
+        params.addValue("to", to);
+        Map<LocalDate, Integer> latestSevenDayAvgs = new LinkedHashMap<>();
+        jt.query(
+                "select day, latest_seven_day_avg from t_seven_day_avg_history"
+                        + " where day >= :from and day < :to order by day",
+                params,
+                rs -> {
+                    latestSevenDayAvgs.put(
+                            rs.getObject("day", LocalDate.class),
+                            rs.getInt("latest_seven_day_avg"));
+                });
+        return latestSevenDayAvgs;
+    }
+
+    @Override
+    @Transactional(readOnly = false)
+    public void upsertDailyHistory(List<History> history) {
+        MapSqlParameterSource[] batchParams = new MapSqlParameterSource[history.size()];
+        for (int i = 0; i < history.size(); i++) {
+            History day = history.get(i);
+            MapSqlParameterSource params = new MapSqlParameterSource();
+            params.addValue("day", day.getDate());
+            params.addValue("covidcodes_entered", day.getCovidcodesEntered());
+            params.addValue("new_infections", day.getNewInfections());
+            params.addValue(
+                    "new_infections_seven_day_average", day.getNewInfectionsSevenDayAverage());
+            batchParams[i] = params;
+        }
+        jt.batchUpdate(
+                "insert into t_daily_history (day, covidcodes_entered, new_infections,"
+                        + " new_infections_seven_day_average)"
+                        + " values (:day, :covidcodes_entered, :new_infections,"
+                        + " :new_infections_seven_day_average)"
+                        + " on conflict on constraint unique_t_daily_history do update set"
+                        + " covidcodes_entered = excluded.covidcodes_entered,"
+                        + " new_infections = excluded.new_infections,"
+                        + " new_infections_seven_day_average ="
+                        + " excluded.new_infections_seven_day_average",
+                batchParams);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<History> findDailyHistory(LocalDate from, LocalDate to) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        params.addValue("from", from);
+        params.addValue("to", to);
+        return jt.query(
+                "select day, covidcodes_entered, new_infections, new_infections_seven_day_average"
+                        + " from t_daily_history where day >= :from and day < :to order by day",
+                params,
+                (rs, rowNum) -> {
+                    History history = new History();
+                    history.setDate(rs.getObject("day", LocalDate.class));
+                    history.setCovidcodesEntered(rs.getObject("covidcodes_entered", Integer.class));
+                    history.setNewInfections(rs.getObject("new_infections", Integer.class));
+                    history.setNewInfectionsSevenDayAverage(
+                            rs.getObject("new_infections_seven_day_average", Integer.class));
+                    return history;
+                });
+    }
+
     @Override
     @Transactional(readOnly = false)
     public void removeBefore(LocalDate day) {
-    	removeLatestSevenDayAvgForDay(day, true);
+        jt.update(
+                "delete from t_seven_day_avg_history where day < :day",
+                new MapSqlParameterSource("day", day));
+    }
+
+    private static MapSqlParameterSource sevenDayAvgParams(
+            LocalDate day, Integer latestSevenDayAvg) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        params.addValue("latest_seven_day_avg", latestSevenDayAvg);
+        params.addValue("day", day);
+        return params;
     }
 }
@@ -0,0 +1,52 @@
+package org.dpppt.additionalinfo.backend.ws.data;
+
+import java.time.Duration;
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+public class JdbcReloadLeaseDataServiceImpl implements ReloadLeaseDataService {
+    private final NamedParameterJdbcTemplate jt;
+    private final String holder;
+
+    /**
+     * @param dataSource
+     * @param holder identifies this instance, must be unique within the cluster
+     */
+    public JdbcReloadLeaseDataServiceImpl(DataSource dataSource, String holder) {
+        this.jt = new NamedParameterJdbcTemplate(dataSource);
+        this.holder = holder;
+    }
+
+    @Override
+    @Transactional(readOnly = false)
+    public boolean tryAcquireLease(String name, Duration duration) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        params.addValue("name", name);
+        params.addValue("holder", holder);
+        params.addValue("duration_ms", duration.toMillis());
+        // the database clock is used, so the clocks of the instances do not have to be in sync
+        int updated =
+                jt.update(
+                        "insert into t_reload_lease (name, holder, expires_at)"
+                                + " values (:name, :holder,"
+                                + " now() + :duration_ms * interval '1 millisecond')"
+                                + " on conflict (name) do update set"
+                                + " holder = excluded.holder, expires_at = excluded.expires_at"
+                                + " where t_reload_lease.expires_at <= now()"
+                                + " or t_reload_lease.holder = excluded.holder",
+                        params);
+        return updated == 1;
+    }
+
+    @Override
+    @Transactional(readOnly = false)
+    public void releaseLease(String name) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        params.addValue("name", name);
+        params.addValue("holder", holder);
+        jt.update(
+                "delete from t_reload_lease where name = :name and holder = :holder", params);
+    }
+}
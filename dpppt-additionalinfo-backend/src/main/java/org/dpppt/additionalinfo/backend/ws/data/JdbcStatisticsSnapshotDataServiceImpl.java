@@ -0,0 +1,66 @@
+package org.dpppt.additionalinfo.backend.ws.data;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+public class JdbcStatisticsSnapshotDataServiceImpl implements StatisticsSnapshotDataService {
+    private final NamedParameterJdbcTemplate jt;
+
+    /** channel on which the creation time of every stored snapshot is sent */
+    static final String SNAPSHOT_CHANNEL = "statistics_snapshot";
+
+    public JdbcStatisticsSnapshotDataServiceImpl(DataSource dataSource) {
+        this.jt = new NamedParameterJdbcTemplate(dataSource);
+    }
+
+    @Override
+    @Transactional(readOnly = false)
+    public void upsertSnapshot(byte[] statistics, Instant createdAt) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        params.addValue("statistics", statistics);
+        params.addValue("created_at", Timestamp.from(createdAt));
+        jt.update(
+                "insert into t_statistics_snapshot (created_at, statistics)"
+                        + " values (:created_at, :statistics)",
+                params);
+        // keep newer snapshots of other instances
+        jt.update("delete from t_statistics_snapshot where created_at < :created_at", params);
+        // delivered to the listeners once the snapshot is committed
+        params.addValue("channel", SNAPSHOT_CHANNEL);
+        params.addValue("payload", createdAt.toString());
+        jt.query("select pg_notify(:channel, :payload)", params, (RowCallbackHandler) rs -> {});
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public StoredStatisticsSnapshot findLatestSnapshot() {
+        List<StoredStatisticsSnapshot> snapshots =
+                jt.query(
+                        "select created_at, statistics from t_statistics_snapshot"
+                                + " order by created_at desc limit 1",
+                        new MapSqlParameterSource(),
+                        (rs, rowNum) ->
+                                new StoredStatisticsSnapshot(
+                                        rs.getBytes("statistics"),
+                                        rs.getTimestamp("created_at").toInstant()));
+        return snapshots.isEmpty() ? null : snapshots.get(0);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Instant findLatestSnapshotCreatedAt() {
+        List<Instant> createdAt =
+                jt.query(
+                        "select created_at from t_statistics_snapshot"
+                                + " order by created_at desc limit 1",
+                        new MapSqlParameterSource(),
+                        (rs, rowNum) -> rs.getTimestamp("created_at").toInstant());
+        return createdAt.isEmpty() ? null : createdAt.get(0);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws.data;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.function.Consumer;
+import javax.sql.DataSource;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Listens for the notifications sent by {@link JdbcStatisticsSnapshotDataServiceImpl} whenever a
+ * snapshot is stored, so that all instances can pick up a new snapshot right away. The listener
+ * holds one connection of the pool for as long as it runs. After (re)connecting, the consumer is
+ * called with null, as notifications might have been missed in the meantime.
+ */
+public class JdbcStatisticsSnapshotListener implements AutoCloseable {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(JdbcStatisticsSnapshotListener.class);
+
+    private final DataSource dataSource;
+    private final Consumer<Instant> onSnapshotStored;
+    private final Duration pollTimeout;
+    private final Duration retryDelay;
+
+    private volatile boolean running = false;
+    private Thread thread;
+
+    /**
+     * @param dataSource
+     * @param onSnapshotStored called with the creation time of the stored snapshot, or null if it
+     *     is unknown
+     * @param pollTimeout how long to wait for notifications before checking whether the listener
+     *     was closed
+     * @param retryDelay how long to wait before reconnecting after an error
+     */
+    public JdbcStatisticsSnapshotListener(
+            DataSource dataSource,
+            Consumer<Instant> onSnapshotStored,
+            Duration pollTimeout,
+            Duration retryDelay) {
+        this.dataSource = dataSource;
+        this.onSnapshotStored = onSnapshotStored;
+        this.pollTimeout = pollTimeout;
+        this.retryDelay = retryDelay;
+    }
+
+    /** starts listening in a background thread */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "statistics-snapshot-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** stops listening, returns at the latest after the poll timeout */
+    @Override
+    public synchronized void close() throws InterruptedException {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread.join(pollTimeout.plusSeconds(1).toMillis());
+            thread = null;
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                listen(connection);
+            } catch (SQLException | RuntimeException e) {
+                if (running) {
+                    logger.error("Statistics snapshot listener failed, reconnecting: ", e);
+                }
+            }
+            if (running) {
+                try {
+                    Thread.sleep(retryDelay.toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void listen(Connection connection) throws SQLException {
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("listen " + JdbcStatisticsSnapshotDataServiceImpl.SNAPSHOT_CHANNEL);
+        }
+        logger.info("Listening for stored statistics snapshots");
+        notify(null);
+        int timeout = (int) pollTimeout.toMillis();
+        while (running) {
+            PGNotification[] notifications = pgConnection.getNotifications(timeout);
+            if (notifications != null && notifications.length > 0) {
+                // only the latest snapshot is of interest
+                notify(parseCreatedAt(notifications[notifications.length - 1].getParameter()));
+            }
+        }
+    }
+
+    private void notify(Instant createdAt) {
+        try {
+            onSnapshotStored.accept(createdAt);
+        } catch (RuntimeException e) {
+            logger.error("Could not handle stored statistics snapshot: ", e);
+        }
+    }
+
+    private static Instant parseCreatedAt(String payload) {
+        try {
+            return Instant.parse(payload);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws.data;
+
+import java.time.Duration;
+
+/**
+ * Shared leases which are held by at most one instance at a time, e.g. to reload the statistics on
+ * a single instance only. A lease is not bound to a connection, it is held until it expires or is
+ * released.
+ */
+public interface ReloadLeaseDataService {
+
+    /**
+     * acquires the lease with the given name for this instance if it is free, expired or already
+     * held by this instance. The lease then expires after the given duration.
+     *
+     * @param name
+     * @param duration
+     * @return true if this instance holds the lease
+     */
+    boolean tryAcquireLease(String name, Duration duration);
+
+    /**
+     * releases the lease with the given name if it is held by this instance
+     *
+     * @param name
+     */
+    void releaseLease(String name);
+}
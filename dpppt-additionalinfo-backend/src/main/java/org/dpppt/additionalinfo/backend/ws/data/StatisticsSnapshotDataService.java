@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws.data;
+
+import java.time.Instant;
+
+/** Persists the last served statistics, so that a new instance can serve them right away. */
+public interface StatisticsSnapshotDataService {
+
+    /**
+     * stores the serialized statistics, replacing all older ones
+     *
+     * @param statistics the json body as it is served
+     * @param createdAt
+     */
+    void upsertSnapshot(byte[] statistics, Instant createdAt);
+
+    /**
+     * returns the most recently stored statistics
+     *
+     * @return the stored statistics or null if nothing is stored
+     */
+    StoredStatisticsSnapshot findLatestSnapshot();
+
+    /**
+     * returns the creation time of the most recently stored statistics, without loading them
+     *
+     * @return the creation time or null if nothing is stored
+     */
+    Instant findLatestSnapshotCreatedAt();
+}
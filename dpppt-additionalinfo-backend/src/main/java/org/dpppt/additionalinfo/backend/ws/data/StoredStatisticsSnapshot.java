@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws.data;
+
+import java.time.Instant;
+
+public class StoredStatisticsSnapshot {
+
+    private final byte[] statistics;
+    private final Instant createdAt;
+
+    public StoredStatisticsSnapshot(byte[] statistics, Instant createdAt) {
+        this.statistics = statistics;
+        this.createdAt = createdAt;
+    }
+
+    /** The serialized statistics as they were served */
+    public byte[] getStatistics() {
+        return statistics;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+}
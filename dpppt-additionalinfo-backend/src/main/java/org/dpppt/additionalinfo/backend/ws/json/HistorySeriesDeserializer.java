@@ -0,0 +1,32 @@
+package org.dpppt.additionalinfo.backend.ws.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import java.io.IOException;
+import java.util.List;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.History;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.HistorySeries;
+
+/**
+ * Reads a {@link HistorySeries} from a list of {@link History} entries, see {@link
+ * HistorySeriesSerializer}.
+ */
+public class HistorySeriesDeserializer extends StdDeserializer<HistorySeries> {
+
+    private static final long serialVersionUID = -4409364526587960478L;
+
+    public HistorySeriesDeserializer() {
+        super(HistorySeries.class);
+    }
+
+    @Override
+    public HistorySeries deserialize(JsonParser p, DeserializationContext ctxt)
+            throws IOException {
+        JavaType type = ctxt.getTypeFactory().constructCollectionType(List.class, History.class);
+        List<History> days = ctxt.readValue(p, type);
+        days.sort((a, b) -> a.getDate().compareTo(b.getDate()));
+        return HistorySeries.of(days);
+    }
+}
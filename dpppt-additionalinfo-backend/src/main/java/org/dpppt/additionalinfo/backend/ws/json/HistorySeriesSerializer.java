@@ -0,0 +1,53 @@
+package org.dpppt.additionalinfo.backend.ws.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import java.io.IOException;
+import java.time.format.DateTimeFormatter;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.HistorySeries;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.IntColumn;
+
+/**
+ * Writes a {@link HistorySeries} directly from its columns, in the same format as a list of
+ * {@link org.dpppt.additionalinfo.backend.ws.model.statistics.History} entries.
+ */
+public class HistorySeriesSerializer extends StdSerializer<HistorySeries> {
+
+    private static final long serialVersionUID = 2984530274169127735L;
+
+    private static final DateTimeFormatter DATE_FORMATTER =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    public HistorySeriesSerializer() {
+        super(HistorySeries.class);
+    }
+
+    @Override
+    public void serialize(HistorySeries value, JsonGenerator gen, SerializerProvider provider)
+            throws IOException {
+        IntColumn newInfections = value.newInfections();
+        IntColumn newInfectionsSevenDayAverage = value.newInfectionsSevenDayAverage();
+        IntColumn covidcodesEntered = value.covidcodesEntered();
+        gen.writeStartArray(value, value.size());
+        for (int i = 0; i < value.size(); i++) {
+            gen.writeStartObject();
+            gen.writeStringField("date", value.getDate(i).format(DATE_FORMATTER));
+            writeField(gen, "newInfections", newInfections, i);
+            writeField(gen, "newInfectionsSevenDayAverage", newInfectionsSevenDayAverage, i);
+            writeField(gen, "covidcodesEntered", covidcodesEntered, i);
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+    }
+
+    private static void writeField(JsonGenerator gen, String name, IntColumn column, int index)
+            throws IOException {
+        gen.writeFieldName(name);
+        if (column.isPresent(index)) {
+            gen.writeNumber(column.values()[index]);
+        } else {
+            gen.writeNull();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.dpppt.additionalinfo.backend.ws.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import java.io.IOException;
+
+/**
+ * Deserializes splunk counts, which are either json numbers or strings. The string "NO_DATA" is
+ * mapped to null.
+ */
+public class NoDataIntegerDeserializer extends StdDeserializer<Integer> {
+
+    private static final long serialVersionUID = -3417766514207011547L;
+
+    private static final String NO_DATA = "NO_DATA";
+
+    public NoDataIntegerDeserializer() {
+        super(Integer.class);
+    }
+
+    @Override
+    public Integer deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.hasToken(JsonToken.VALUE_NUMBER_INT)) {
+            return p.getIntValue();
+        }
+        if (p.hasToken(JsonToken.VALUE_STRING)) {
+            String text = p.getText().trim();
+            if (text.isEmpty() || NO_DATA.equals(text)) {
+                return null;
+            }
+            try {
+                return Integer.parseInt(text);
+            } catch (NumberFormatException e) {
+                return (Integer) ctxt.handleWeirdStringValue(_valueClass, text, "not a valid count");
+            }
+        }
+        return (Integer) ctxt.handleUnexpectedToken(_valueClass, p);
+    }
+}
@@ -13,6 +13,20 @@ public class History {
     private Integer newInfectionsSevenDayAverage;
     private Integer covidcodesEntered;
 
+    public History() {}
+
+    /**
+     * creates a copy of the given history
+     *
+     * @param other
+     */
+    public History(History other) {
+        this.date = other.date;
+        this.newInfections = other.newInfections;
+        this.newInfectionsSevenDayAverage = other.newInfectionsSevenDayAverage;
+        this.covidcodesEntered = other.covidcodesEntered;
+    }
+
     public LocalDate getDate() {
         return date;
     }
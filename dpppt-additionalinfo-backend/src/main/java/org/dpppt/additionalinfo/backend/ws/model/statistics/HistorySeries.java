@@ -0,0 +1,160 @@
+package org.dpppt.additionalinfo.backend.ws.model.statistics;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.dpppt.additionalinfo.backend.ws.json.HistorySeriesDeserializer;
+import org.dpppt.additionalinfo.backend.ws.json.HistorySeriesSerializer;
+
+/**
+ * The daily history as columns of primitive values. Day i of the series is startDate + i, so the
+ * index of a day is its epoch day offset to the start date. The json representation is the same
+ * as the one of a list of {@link History} entries.
+ */
+@JsonSerialize(using = HistorySeriesSerializer.class)
+@JsonDeserialize(using = HistorySeriesDeserializer.class)
+public class HistorySeries {
+
+    private final LocalDate startDate;
+    private final long startEpochDay;
+    private final IntColumn newInfections;
+    private final IntColumn newInfectionsSevenDayAverage;
+    private final IntColumn covidcodesEntered;
+
+    /**
+     * creates a series without values
+     *
+     * @param startDate the first day
+     * @param days the number of days
+     */
+    public HistorySeries(LocalDate startDate, int days) {
+        this.startDate = startDate;
+        this.startEpochDay = startDate.toEpochDay();
+        this.newInfections = new IntColumn(days);
+        this.newInfectionsSevenDayAverage = new IntColumn(days);
+        this.covidcodesEntered = new IntColumn(days);
+    }
+
+    /**
+     * creates a copy of the given series
+     *
+     * @param other
+     */
+    public HistorySeries(HistorySeries other) {
+        this.startDate = other.startDate;
+        this.startEpochDay = other.startEpochDay;
+        this.newInfections = new IntColumn(other.newInfections);
+        this.newInfectionsSevenDayAverage = new IntColumn(other.newInfectionsSevenDayAverage);
+        this.covidcodesEntered = new IntColumn(other.covidcodesEntered);
+    }
+
+    /**
+     * creates a series from first to last date of the given days, days not contained are empty
+     *
+     * @param days ordered by date
+     * @return
+     */
+    public static HistorySeries of(List<History> days) {
+        if (days.isEmpty()) {
+            return new HistorySeries(LocalDate.EPOCH, 0);
+        }
+        LocalDate startDate = days.get(0).getDate();
+        LocalDate endDate = days.get(days.size() - 1).getDate().plusDays(1);
+        HistorySeries series =
+                new HistorySeries(startDate, (int) (endDate.toEpochDay() - startDate.toEpochDay()));
+        for (History day : days) {
+            series.set(day);
+        }
+        return series;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    /** The day after the last day of the series */
+    public LocalDate getEndDate() {
+        return startDate.plusDays(size());
+    }
+
+    public int size() {
+        return newInfections.size();
+    }
+
+    /** returns the date of the day with the given index */
+    public LocalDate getDate(int index) {
+        return LocalDate.ofEpochDay(startEpochDay + index);
+    }
+
+    /**
+     * returns the index of the given day
+     *
+     * @param date
+     * @return the index or -1 if the day is not part of the series
+     */
+    public int indexOf(LocalDate date) {
+        long index = date.toEpochDay() - startEpochDay;
+        return index >= 0 && index < size() ? (int) index : -1;
+    }
+
+    public IntColumn newInfections() {
+        return newInfections;
+    }
+
+    public IntColumn newInfectionsSevenDayAverage() {
+        return newInfectionsSevenDayAverage;
+    }
+
+    public IntColumn covidcodesEntered() {
+        return covidcodesEntered;
+    }
+
+    /**
+     * returns the values of the day with the given index
+     *
+     * @param index
+     * @return
+     */
+    public History get(int index) {
+        History history = new History();
+        history.setDate(getDate(index));
+        history.setNewInfections(newInfections.get(index));
+        history.setNewInfectionsSevenDayAverage(newInfectionsSevenDayAverage.get(index));
+        history.setCovidcodesEntered(covidcodesEntered.get(index));
+        return history;
+    }
+
+    /**
+     * sets all values of the given day. Days which are not part of the series are ignored.
+     *
+     * @param history
+     * @return true if the day is part of the series
+     */
+    public boolean set(History history) {
+        int index = indexOf(history.getDate());
+        if (index < 0) {
+            return false;
+        }
+        newInfections.set(index, history.getNewInfections());
+        newInfectionsSevenDayAverage.set(index, history.getNewInfectionsSevenDayAverage());
+        covidcodesEntered.set(index, history.getCovidcodesEntered());
+        return true;
+    }
+
+    /**
+     * returns the values of the days from (inclusive) to (exclusive)
+     *
+     * @param fromIndex
+     * @param toIndex
+     * @return
+     */
+    public List<History> toHistory(int fromIndex, int toIndex) {
+        List<History> history = new ArrayList<>(toIndex - fromIndex);
+        for (int index = fromIndex; index < toIndex; index++) {
+            history.add(get(index));
+        }
+        return history;
+    }
+}
@@ -0,0 +1,89 @@
+package org.dpppt.additionalinfo.backend.ws.model.statistics;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+
+/** A column of nullable int values, stored as primitive values and a bitmap of present values */
+public class IntColumn {
+
+    private final int[] values;
+    private final BitSet present;
+
+    public IntColumn(int size) {
+        this.values = new int[size];
+        this.present = new BitSet(size);
+    }
+
+    /**
+     * creates a copy of the given column
+     *
+     * @param other
+     */
+    public IntColumn(IntColumn other) {
+        this.values = Arrays.copyOf(other.values, other.values.length);
+        this.present = (BitSet) other.present.clone();
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    /** returns the value at the given index or null if there is none */
+    public Integer get(int index) {
+        Objects.checkIndex(index, values.length);
+        return present.get(index) ? values[index] : null;
+    }
+
+    /** sets the value at the given index, null removes the value */
+    public void set(int index, Integer value) {
+        if (value == null) {
+            values[index] = 0;
+            present.clear(index);
+        } else {
+            values[index] = value;
+            present.set(index);
+        }
+    }
+
+    public boolean isPresent(int index) {
+        return present.get(index);
+    }
+
+    /** returns the sum of all present values */
+    public long sum() {
+        long sum = 0;
+        for (int index = present.nextSetBit(0); index >= 0; index = present.nextSetBit(index + 1)) {
+            sum += values[index];
+        }
+        return sum;
+    }
+
+    /** The primitive values. Missing values are 0. Modifications write through to the column. */
+    public int[] values() {
+        return values;
+    }
+
+    /** The bitmap of present values. Modifications write through to the column. */
+    public BitSet presence() {
+        return present;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof IntColumn)) {
+            return false;
+        }
+        // missing values are always 0
+        IntColumn other = (IntColumn) obj;
+        return Arrays.equals(values, other.values) && present.equals(other.present);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+}
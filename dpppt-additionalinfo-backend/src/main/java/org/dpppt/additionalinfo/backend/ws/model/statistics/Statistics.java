@@ -1,9 +1,11 @@
 package org.dpppt.additionalinfo.backend.ws.model.statistics;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import java.time.Instant;
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.dpppt.additionalinfo.backend.ws.json.CustomLocalDateSerializer;
 
 public class Statistics {
@@ -18,7 +20,34 @@ public class Statistics {
     private Integer newInfectionsSevenDayAvg;
     private Double newInfectionsSevenDayAvgRelPrevWeek;
 
-    private List<History> history = new ArrayList<History>();
+    private HistorySeries history = new HistorySeries(LocalDate.EPOCH, 0);
+
+    // fields whose values were reused because their source could not be loaded, with the time
+    // they were loaded. Only used to build and check the statistics, it is not published.
+    @JsonIgnore private Map<String, Instant> staleFields = Map.of();
+
+    // fields whose new values were implausible and which keep the previously accepted values. Not
+    // published either.
+    @JsonIgnore private Set<String> rejectedFields = Set.of();
+
+    public Statistics() {}
+
+    /**
+     * creates a deep copy of the given statistics, including the history
+     *
+     * @param other
+     */
+    public Statistics(Statistics other) {
+        this.lastUpdated = other.lastUpdated;
+        this.totalActiveUsers = other.totalActiveUsers;
+        this.totalCovidcodesEntered = other.totalCovidcodesEntered;
+        this.covidcodesEntered0to2dPrevWeek = other.covidcodesEntered0to2dPrevWeek;
+        this.newInfectionsSevenDayAvg = other.newInfectionsSevenDayAvg;
+        this.newInfectionsSevenDayAvgRelPrevWeek = other.newInfectionsSevenDayAvgRelPrevWeek;
+        this.history = new HistorySeries(other.history);
+        this.staleFields = other.staleFields;
+        this.rejectedFields = other.rejectedFields;
+    }
 
     public Integer getTotalActiveUsers() {
         return totalActiveUsers;
@@ -60,11 +89,11 @@ public class Statistics {
         this.newInfectionsSevenDayAvgRelPrevWeek = newInfectionsSevenDayAvgRelPrevWeek;
     }
 
-    public List<History> getHistory() {
+    public HistorySeries getHistory() {
         return history;
     }
 
-    public void setHistory(List<History> history) {
+    public void setHistory(HistorySeries history) {
         this.history = history;
     }
 
@@ -75,4 +104,20 @@ public class Statistics {
     public void setLastUpdated(LocalDate lastUpdated) {
         this.lastUpdated = lastUpdated;
     }
+
+    public Map<String, Instant> getStaleFields() {
+        return staleFields;
+    }
+
+    public void setStaleFields(Map<String, Instant> staleFields) {
+        this.staleFields = Map.copyOf(staleFields);
+    }
+
+    public Set<String> getRejectedFields() {
+        return rejectedFields;
+    }
+
+    public void setRejectedFields(Set<String> rejectedFields) {
+        this.rejectedFields = Set.copyOf(rejectedFields);
+    }
 }
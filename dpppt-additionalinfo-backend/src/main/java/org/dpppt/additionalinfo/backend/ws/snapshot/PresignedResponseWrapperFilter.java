@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws.snapshot;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.security.KeyPair;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.dpppt.backend.shared.security.filter.ResponseWrapperFilter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.util.UrlPathHelper;
+
+/**
+ * {@link ResponseWrapperFilter} which does not buffer and sign responses of the given paths. The
+ * handlers of these paths are responsible to set the digest and signature headers themselves (see
+ * {@link StatisticsSnapshot}).
+ *
+ * <p>The presigned responses are timed (statistics.request, by result: full, not_modified or
+ * unavailable) and their size is recorded (statistics.response.size, by content encoding). As
+ * serialization and signing happen once per snapshot, the request timer measures the I/O. All
+ * other responses are timed including the signing (response.signing). The meters are registered
+ * upfront, so the overhead per request is one timer sample.
+ */
+public class PresignedResponseWrapperFilter extends ResponseWrapperFilter {
+
+    private final List<String> presignedPaths;
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    private final Timer fullTimer;
+    private final Timer notModifiedTimer;
+    private final Timer unavailableTimer;
+    private final DistributionSummary identitySize;
+    private final DistributionSummary gzipSize;
+    private final Timer signingTimer;
+
+    public PresignedResponseWrapperFilter(
+            KeyPair pair,
+            int retentionDays,
+            List<String> protectedHeaders,
+            List<String> presignedPaths,
+            MeterRegistry meterRegistry) {
+        super(pair, retentionDays, protectedHeaders);
+        this.presignedPaths = presignedPaths;
+        this.fullTimer = requestTimer("full", meterRegistry);
+        this.notModifiedTimer = requestTimer("not_modified", meterRegistry);
+        this.unavailableTimer = requestTimer("unavailable", meterRegistry);
+        this.identitySize = responseSize("identity", meterRegistry);
+        this.gzipSize = responseSize("gzip", meterRegistry);
+        this.signingTimer =
+                Timer.builder("response.signing")
+                        .description(
+                                "duration of the requests which are signed per request,"
+                                        + " including the handler")
+                        .register(meterRegistry);
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        long start = System.nanoTime();
+        if (isPresigned(request)) {
+            chain.doFilter(request, response);
+            recordPresigned(response, System.nanoTime() - start);
+        } else {
+            super.doFilter(request, response, chain);
+            signingTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void recordPresigned(ServletResponse response, long nanos) {
+        if (!(response instanceof HttpServletResponse)) {
+            return;
+        }
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        switch (httpResponse.getStatus()) {
+            case HttpServletResponse.SC_OK:
+                fullTimer.record(nanos, TimeUnit.NANOSECONDS);
+                String contentLength = httpResponse.getHeader(HttpHeaders.CONTENT_LENGTH);
+                if (contentLength != null) {
+                    boolean gzip =
+                            "gzip".equals(httpResponse.getHeader(HttpHeaders.CONTENT_ENCODING));
+                    (gzip ? gzipSize : identitySize).record(Long.parseLong(contentLength));
+                }
+                break;
+            case HttpServletResponse.SC_NOT_MODIFIED:
+                notModifiedTimer.record(nanos, TimeUnit.NANOSECONDS);
+                break;
+            default:
+                unavailableTimer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static Timer requestTimer(String result, MeterRegistry meterRegistry) {
+        return Timer.builder("statistics.request")
+                .tag("result", result)
+                .description("duration of the statistics requests, by result")
+                .register(meterRegistry);
+    }
+
+    private static DistributionSummary responseSize(String encoding, MeterRegistry meterRegistry) {
+        return DistributionSummary.builder("statistics.response.size")
+                .tag("encoding", encoding)
+                .baseUnit("bytes")
+                .description("size of the statistics response bodies")
+                .register(meterRegistry);
+    }
+
+    private boolean isPresigned(ServletRequest request) {
+        if (!(request instanceof HttpServletRequest)) {
+            return false;
+        }
+        String path = urlPathHelper.getPathWithinApplication((HttpServletRequest) request);
+        return presignedPaths.contains(path);
+    }
+}
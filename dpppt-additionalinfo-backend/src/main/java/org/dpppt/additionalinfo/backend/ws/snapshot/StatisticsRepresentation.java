@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws.snapshot;
+
+import org.springframework.http.HttpHeaders;
+
+/** One content encoding (identity, gzip) of a {@link StatisticsSnapshot} */
+public class StatisticsRepresentation {
+
+    private final byte[] body;
+    private final String etag;
+    private final HttpHeaders headers;
+    private final HttpHeaders notModifiedHeaders;
+
+    StatisticsRepresentation(
+            byte[] body, String etag, HttpHeaders headers, HttpHeaders notModifiedHeaders) {
+        this.body = body;
+        this.etag = etag;
+        this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+        this.notModifiedHeaders = HttpHeaders.readOnlyHttpHeaders(notModifiedHeaders);
+    }
+
+    /** The encoded body. The array is shared between all requests and must not be modified. */
+    public byte[] getBody() {
+        return body;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * The response headers (content type and encoding, cache control, etag, last modified, digest
+     * and signature) of this representation
+     */
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    /** The response headers (cache control, etag and last modified) of a 304 Not Modified response */
+    public HttpHeaders getNotModifiedHeaders() {
+        return notModifiedHeaders;
+    }
+}
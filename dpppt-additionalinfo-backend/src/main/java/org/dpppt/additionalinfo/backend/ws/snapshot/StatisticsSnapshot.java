@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws.snapshot;
+
+import java.time.Instant;
+import java.util.List;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * The statistics as they are served to the apps: the serialized json body (plain and gzip encoded)
+ * together with its digest, signature and etags. A snapshot is created once per reload and never
+ * modified afterwards. All fields are final, so a snapshot can be shared between threads without
+ * synchronization (see {@link StatisticsSnapshotHolder}).
+ */
+public class StatisticsSnapshot {
+
+    private final long version;
+    private final Statistics statistics;
+    private final String digest;
+    private final String signature;
+    private final Instant createdAt;
+    private final Instant signatureRenewalAt;
+    private final StatisticsRepresentation identity;
+    private final StatisticsRepresentation gzip;
+
+    StatisticsSnapshot(
+            long version,
+            Statistics statistics,
+            String digest,
+            String signature,
+            Instant createdAt,
+            Instant signatureRenewalAt,
+            StatisticsRepresentation identity,
+            StatisticsRepresentation gzip) {
+        this.version = version;
+        this.statistics = statistics;
+        this.digest = digest;
+        this.signature = signature;
+        this.createdAt = createdAt;
+        this.signatureRenewalAt = signatureRenewalAt;
+        this.identity = identity;
+        this.gzip = gzip;
+    }
+
+    /**
+     * The version assigned by the {@link StatisticsSnapshotHolder} when the snapshot was published.
+     * 0 for snapshots which have not been published yet.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /** A copy of the statistics this snapshot was created from */
+    public Statistics getStatistics() {
+        return new Statistics(statistics);
+    }
+
+    /** The statistics this snapshot was created from, without copying them. Must not be modified. */
+    Statistics statistics() {
+        return statistics;
+    }
+
+    /**
+     * returns this snapshot with the given version
+     *
+     * @param version
+     * @return
+     */
+    StatisticsSnapshot withVersion(long version) {
+        if (version == this.version) {
+            return this;
+        }
+        return new StatisticsSnapshot(
+                version,
+                statistics,
+                digest,
+                signature,
+                createdAt,
+                signatureRenewalAt,
+                identity,
+                gzip);
+    }
+
+    public String getDigest() {
+        return digest;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    /** The plain json representation */
+    public StatisticsRepresentation getIdentity() {
+        return identity;
+    }
+
+    /** The gzip encoded representation */
+    public StatisticsRepresentation getGzip() {
+        return gzip;
+    }
+
+    /**
+     * selects the representation according to the Accept-Encoding request header
+     *
+     * @param requestHeaders
+     * @return
+     */
+    public StatisticsRepresentation select(HttpHeaders requestHeaders) {
+        return acceptsGzip(requestHeaders.get(HttpHeaders.ACCEPT_ENCODING)) ? gzip : identity;
+    }
+
+    /**
+     * checks the conditional request headers (If-None-Match and If-Modified-Since) against this
+     * snapshot. If-None-Match takes precedence over If-Modified-Since. The etags of all
+     * representations are accepted, as they only differ in their content encoding.
+     *
+     * @param requestHeaders
+     * @return true if the client already has the content of this snapshot
+     */
+    public boolean isNotModified(HttpHeaders requestHeaders) {
+        List<String> ifNoneMatch = requestHeaders.getIfNoneMatch();
+        if (!ifNoneMatch.isEmpty()) {
+            for (String candidate : ifNoneMatch) {
+                // weak comparison is sufficient for GET requests
+                String etag = stripWeakPrefix(candidate);
+                if ("*".equals(etag)
+                        || identity.getEtag().equals(etag)
+                        || gzip.getEtag().equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = requestHeaders.getIfModifiedSince();
+        } catch (IllegalArgumentException e) {
+            // invalid dates are ignored
+            return false;
+        }
+        // http dates have a precision of seconds
+        return ifModifiedSince != -1 && createdAt.getEpochSecond() * 1000 <= ifModifiedSince;
+    }
+
+    /**
+     * returns true if the signature is about to expire and the snapshot has to be signed again
+     *
+     * @param now
+     * @return
+     */
+    public boolean needsResigning(Instant now) {
+        return !now.isBefore(signatureRenewalAt);
+    }
+
+    private static String stripWeakPrefix(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static boolean acceptsGzip(List<String> acceptEncodings) {
+        if (acceptEncodings == null) {
+            return false;
+        }
+        // an explicit gzip coding takes precedence over the wildcard
+        Boolean gzipAccepted = null;
+        Boolean wildcardAccepted = null;
+        for (String acceptEncoding : acceptEncodings) {
+            for (String coding : acceptEncoding.split(",")) {
+                String[] parts = coding.trim().split(";");
+                String name = parts[0].trim();
+                if ("gzip".equalsIgnoreCase(name)) {
+                    gzipAccepted = !hasZeroQuality(parts);
+                } else if ("*".equals(name)) {
+                    wildcardAccepted = !hasZeroQuality(parts);
+                }
+            }
+        }
+        return gzipAccepted != null ? gzipAccepted : Boolean.TRUE.equals(wildcardAccepted);
+    }
+
+    private static boolean hasZeroQuality(String[] codingParts) {
+        for (int i = 1; i < codingParts.length; i++) {
+            String param = codingParts[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2)) == 0;
+                } catch (NumberFormatException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
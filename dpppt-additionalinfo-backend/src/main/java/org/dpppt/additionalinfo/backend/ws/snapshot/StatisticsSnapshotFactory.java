@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws.snapshot;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.bouncycastle.util.encoders.Hex;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+/**
+ * Serializes, compresses and signs {@link Statistics} into a {@link StatisticsSnapshot}. The
+ * signature has the same format as the one created by the ResponseWrapperFilter for all other
+ * responses. Digest and signature are always computed over the plain json, so they are valid for
+ * every content encoding once the client has decoded the body.
+ *
+ * <p>The duration of every stage (serialize, gzip, sign) is recorded in the
+ * statistics.snapshot.stage timer, as these costs are paid once per snapshot instead of once per
+ * request.
+ */
+public class StatisticsSnapshotFactory {
+
+    public static final String HEADER_SIGNATURE = "Signature";
+    public static final String HEADER_DIGEST = "Digest";
+
+    private static final String CLAIM_CONTENT_HASH = "content-hash";
+    private static final String CLAIM_HASH_ALG = "hash-alg";
+    private static final String HASH_ALG = "sha-256";
+    private static final String ISSUER_DP3T = "dp3t";
+
+    private final ObjectMapper objectMapper;
+    private final KeyPair keyPair;
+    private final Duration signatureValidity;
+    private final List<String> protectedHeaders;
+    private final Duration cacheControl;
+    private final Timer serializeTimer;
+    private final Timer gzipTimer;
+    private final Timer signTimer;
+
+    public StatisticsSnapshotFactory(
+            ObjectMapper objectMapper,
+            KeyPair keyPair,
+            Duration signatureValidity,
+            List<String> protectedHeaders,
+            Duration cacheControl,
+            MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.keyPair = keyPair;
+        this.signatureValidity = signatureValidity;
+        this.protectedHeaders = protectedHeaders;
+        this.cacheControl = cacheControl;
+        this.serializeTimer = stageTimer("serialize", meterRegistry);
+        this.gzipTimer = stageTimer("gzip", meterRegistry);
+        this.signTimer = stageTimer("sign", meterRegistry);
+    }
+
+    /**
+     * serializes and signs the given statistics. The snapshot keeps its own copy of the
+     * statistics, so the given ones may be modified afterwards.
+     *
+     * @param statistics
+     * @return an unpublished snapshot (version 0)
+     */
+    public StatisticsSnapshot create(Statistics statistics) {
+        try {
+            Statistics copy = new Statistics(statistics);
+            Timer.Sample sample = Timer.start();
+            byte[] body = objectMapper.writeValueAsBytes(copy);
+            sample.stop(serializeTimer);
+            return create(copy, body, Instant.now());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize statistics", e);
+        }
+    }
+
+    /**
+     * restores a snapshot from its serialized statistics, e.g. after a restart. The statistics are
+     * signed again.
+     *
+     * @param body the json body of a previously created snapshot
+     * @param createdAt the creation time of the previously created snapshot
+     * @return
+     */
+    public StatisticsSnapshot restore(byte[] body, Instant createdAt) {
+        try {
+            Statistics statistics = objectMapper.readValue(body, Statistics.class);
+            return create(statistics, body, createdAt);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not deserialize statistics", e);
+        }
+    }
+
+    /**
+     * creates a new snapshot with the same content and version as the given one, but with a fresh
+     * signature
+     *
+     * @param snapshot
+     * @return
+     */
+    public StatisticsSnapshot resign(StatisticsSnapshot snapshot) {
+        return create(
+                        snapshot.statistics(),
+                        snapshot.getIdentity().getBody(),
+                        snapshot.getGzip().getBody(),
+                        snapshot.getCreatedAt())
+                .withVersion(snapshot.getVersion());
+    }
+
+    private StatisticsSnapshot create(Statistics statistics, byte[] body, Instant createdAt) {
+        Timer.Sample sample = Timer.start();
+        byte[] gzipBody = gzip(body);
+        sample.stop(gzipTimer);
+        return create(statistics, body, gzipBody, createdAt);
+    }
+
+    private StatisticsSnapshot create(
+            Statistics statistics, byte[] body, byte[] gzipBody, Instant createdAt) {
+        Timer.Sample sample = Timer.start();
+        byte[] hash = sha256(body);
+        String hexHash = Hex.toHexString(hash);
+        String digest = HASH_ALG + "=" + hexHash;
+
+        HttpHeaders commonHeaders = new HttpHeaders();
+        commonHeaders.setContentType(MediaType.APPLICATION_JSON);
+        commonHeaders.set(HEADER_DIGEST, digest);
+        Instant issuedAt = Instant.now();
+        String signature = sign(hash, commonHeaders, issuedAt);
+        commonHeaders.set(HEADER_SIGNATURE, signature);
+        sample.stop(signTimer);
+
+        StatisticsRepresentation identity =
+                createRepresentation(body, "\"" + hexHash + "\"", null, createdAt, commonHeaders);
+        // only serve the gzip encoding if it is actually smaller
+        StatisticsRepresentation gzip =
+                gzipBody.length < body.length
+                        ? createRepresentation(
+                                gzipBody,
+                                "\"" + hexHash + "-gzip\"",
+                                "gzip",
+                                createdAt,
+                                commonHeaders)
+                        : identity;
+
+        return new StatisticsSnapshot(
+                0,
+                statistics,
+                digest,
+                signature,
+                createdAt,
+                issuedAt.plus(signatureValidity.dividedBy(2)),
+                identity,
+                gzip);
+    }
+
+    private StatisticsRepresentation createRepresentation(
+            byte[] body,
+            String etag,
+            String contentEncoding,
+            Instant lastModified,
+            HttpHeaders commonHeaders) {
+        HttpHeaders notModifiedHeaders = new HttpHeaders();
+        notModifiedHeaders.setCacheControl(CacheControl.maxAge(cacheControl));
+        notModifiedHeaders.setETag(etag);
+        notModifiedHeaders.setLastModified(lastModified);
+        notModifiedHeaders.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.addAll(notModifiedHeaders);
+        headers.addAll(commonHeaders);
+        if (contentEncoding != null) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+        }
+        headers.setContentLength(body.length);
+        return new StatisticsRepresentation(body, etag, headers, notModifiedHeaders);
+    }
+
+    private String sign(byte[] hash, HttpHeaders headers, Instant issuedAt) {
+        Claims claims = Jwts.claims();
+        claims.put(CLAIM_CONTENT_HASH, Base64.getEncoder().encodeToString(hash));
+        claims.put(CLAIM_HASH_ALG, HASH_ALG);
+        claims.setIssuer(ISSUER_DP3T);
+        claims.setIssuedAt(Date.from(issuedAt));
+        claims.setExpiration(Date.from(issuedAt.plus(signatureValidity)));
+        for (String header : protectedHeaders) {
+            if (headers.containsKey(header)) {
+                claims.put(header.toLowerCase(), headers.getFirst(header));
+            }
+        }
+        return Jwts.builder().setClaims(claims).signWith(keyPair.getPrivate()).compact();
+    }
+
+    private static Timer stageTimer(String stage, MeterRegistry meterRegistry) {
+        return Timer.builder("statistics.snapshot.stage")
+                .tag("stage", stage)
+                .description("duration of creating the served statistics, by stage")
+                .register(meterRegistry);
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] sha256(byte[] body) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(body);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws.snapshot;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the currently served {@link StatisticsSnapshot}. Readers never block: they always see
+ * either the previous or the new snapshot, never a partially initialized one. Every published
+ * snapshot gets the next version number.
+ */
+public class StatisticsSnapshotHolder {
+
+    private final AtomicReference<StatisticsSnapshot> current = new AtomicReference<>();
+
+    /** returns the current snapshot or null if none has been published yet */
+    public StatisticsSnapshot get() {
+        return current.get();
+    }
+
+    /**
+     * publishes a new snapshot with the next version number
+     *
+     * @param snapshot
+     * @return the published snapshot
+     */
+    public StatisticsSnapshot publish(StatisticsSnapshot snapshot) {
+        return current.updateAndGet(
+                previous -> snapshot.withVersion(previous == null ? 1 : previous.getVersion() + 1));
+    }
+
+    /**
+     * publishes a new snapshot with the next version number, unless the current snapshot was
+     * created at the same time or later, e.g. by a concurrent reload
+     *
+     * @param snapshot
+     * @return the published snapshot or null if the current snapshot is kept
+     */
+    public StatisticsSnapshot publishIfNewer(StatisticsSnapshot snapshot) {
+        while (true) {
+            StatisticsSnapshot previous = current.get();
+            if (previous != null && !snapshot.getCreatedAt().isAfter(previous.getCreatedAt())) {
+                return null;
+            }
+            StatisticsSnapshot versioned =
+                    snapshot.withVersion(previous == null ? 1 : previous.getVersion() + 1);
+            if (current.compareAndSet(previous, versioned)) {
+                return versioned;
+            }
+        }
+    }
+
+    /**
+     * replaces the expected snapshot with a re-signed copy of it (keeping its version). If another
+     * snapshot has been published in the meantime, the newer one is kept.
+     *
+     * @param expected
+     * @param replacement
+     * @return the current snapshot after the replacement
+     */
+    public StatisticsSnapshot replace(StatisticsSnapshot expected, StatisticsSnapshot replacement) {
+        StatisticsSnapshot versioned = replacement.withVersion(expected.getVersion());
+        if (current.compareAndSet(expected, versioned)) {
+            return versioned;
+        }
+        return current.get();
+    }
+}
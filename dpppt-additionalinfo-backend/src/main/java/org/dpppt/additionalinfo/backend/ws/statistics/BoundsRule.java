@@ -0,0 +1,37 @@
+package org.dpppt.additionalinfo.backend.ws.statistics;
+
+import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+
+/** rejects values outside of fixed bounds, e.g. negative counts or shares above 1 */
+public class BoundsRule implements PlausibilityRule {
+
+    private final PlausibilityField field;
+    private final double min;
+    private final double max;
+
+    /**
+     * @param field
+     * @param min smallest plausible value
+     * @param max largest plausible value
+     */
+    public BoundsRule(PlausibilityField field, double min, double max) {
+        this.field = field;
+        this.min = min;
+        this.max = max;
+    }
+
+    @Override
+    public String getName() {
+        return "bounds";
+    }
+
+    @Override
+    public PlausibilityField getField() {
+        return field;
+    }
+
+    @Override
+    public boolean isPlausible(double value, Statistics candidate, Statistics current) {
+        return value >= min && value <= max;
+    }
+}
@@ -0,0 +1,54 @@
+package org.dpppt.additionalinfo.backend.ws.statistics;
+
+import org.dpppt.additionalinfo.backend.ws.model.statistics.IntColumn;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+
+/**
+ * rejects a daily field if the latest day differs too much from the day before. Small absolute
+ * changes are always plausible, as the relative change of small counts is large.
+ */
+public class DayOverDayRule implements PlausibilityRule {
+
+    private final PlausibilityField field;
+    private final double maxRelativeChange;
+    private final double minAbsoluteChange;
+
+    /**
+     * @param field a daily field
+     * @param maxRelativeChange largest plausible change relative to the day before, e.g. 1 for
+     *     +-100%
+     * @param minAbsoluteChange changes up to this value are always plausible
+     */
+    public DayOverDayRule(
+            PlausibilityField field, double maxRelativeChange, double minAbsoluteChange) {
+        if (!field.isDaily()) {
+            throw new IllegalArgumentException(field + " is not a daily field");
+        }
+        this.field = field;
+        this.maxRelativeChange = maxRelativeChange;
+        this.minAbsoluteChange = minAbsoluteChange;
+    }
+
+    @Override
+    public String getName() {
+        return "dayoverday";
+    }
+
+    @Override
+    public PlausibilityField getField() {
+        return field;
+    }
+
+    @Override
+    public boolean isPlausible(double value, Statistics candidate, Statistics current) {
+        IntColumn values = field.column(candidate);
+        int latest = PlausibilityField.latestIndex(values);
+        int previous = latest > 0 ? values.presence().previousSetBit(latest - 1) : -1;
+        if (previous < 0) {
+            return true;
+        }
+        int previousValue = values.get(previous);
+        return Math.abs(value - previousValue)
+                <= Math.max(minAbsoluteChange, maxRelativeChange * previousValue);
+    }
+}
@@ -0,0 +1,19 @@
+package org.dpppt.additionalinfo.backend.ws.statistics;
+
+import java.util.Set;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+
+/**
+ * A stage of the {@link StatisticsPipeline} which runs after all source results are merged, e.g.
+ * to compute averages or totals from the history.
+ */
+@FunctionalInterface
+public interface DerivedMetricStage {
+
+    /**
+     * @param statistics the merged statistics
+     * @param refreshedSources names of the sources which were loaded in this run, the results of
+     *     all other sources were reused
+     */
+    public void apply(Statistics statistics, Set<String> refreshedSources);
+}
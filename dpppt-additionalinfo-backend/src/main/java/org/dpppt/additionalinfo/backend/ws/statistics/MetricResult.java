@@ -0,0 +1,19 @@
+package org.dpppt.additionalinfo.backend.ws.statistics;
+
+import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+
+/** the partial result of a {@link MetricSource} */
+@FunctionalInterface
+public interface MetricResult {
+
+    /** a result which contributes nothing, e.g. if the source returned no values */
+    public static final MetricResult EMPTY = statistics -> {};
+
+    /**
+     * sets the values of this result in the statistics. Called for every run, so it must not
+     * modify the result itself.
+     *
+     * @param statistics
+     */
+    public void mergeInto(Statistics statistics);
+}
@@ -0,0 +1,60 @@
+package org.dpppt.additionalinfo.backend.ws.statistics;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * One source of the {@link StatisticsPipeline}, e.g. a single splunk search. Every source loads
+ * its values independently of the others and is refreshed on its own cadence.
+ */
+public interface MetricSource {
+
+    /** unique name of the source, e.g. the name of the search */
+    public String getName();
+
+    /**
+     * names of the statistics fields which are set by this source or derived from its values.
+     * They are marked as stale if the source could not be loaded and its last result is reused.
+     *
+     * @return the field names, by default only the name of the source
+     */
+    public default List<String> getFields() {
+        return List.of(getName());
+    }
+
+    /**
+     * minimal time between two loads of this source. The result of the last load is reused by
+     * runs in between. Results of a previous day are always reloaded.
+     *
+     * @return {@link Duration#ZERO} to load the source on every run
+     */
+    public Duration getRefreshInterval();
+
+    /**
+     * maximal duration of loading this source, e.g. longer for searches which are expected to run
+     * longer than the others
+     *
+     * @return null to use the timeout of the pipeline
+     */
+    public default Duration getTimeout() {
+        return null;
+    }
+
+    /**
+     * loads the values of this source. Called by the pipeline in its own thread, concurrently with
+     * the other sources.
+     *
+     * @return the partial result, which is merged into the statistics of every run until the next
+     *     load
+     * @throws Exception if the values could not be loaded. The last result of this source is
+     *     reused, the run only fails if there is none.
+     */
+    public MetricResult load() throws Exception;
+
+    /**
+     * aborts a running {@link #load()} which did not finish within the timeout. Called by the
+     * pipeline after interrupting the load, e.g. to abort a request which blocks in a socket read
+     * and does not notice the interrupt.
+     */
+    public default void cancel() {}
+}
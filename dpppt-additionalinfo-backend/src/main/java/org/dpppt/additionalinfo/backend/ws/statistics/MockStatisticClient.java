@@ -1,80 +1,95 @@
 package org.dpppt.additionalinfo.backend.ws.statistics;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Random;
 import org.dpppt.additionalinfo.backend.ws.data.HistoryDataService;
-import org.dpppt.additionalinfo.backend.ws.model.statistics.History;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.HistorySeries;
 import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 public class MockStatisticClient implements StatisticClient {
 
-    private static final Logger logger = LoggerFactory.getLogger(MockStatisticClient.class);
+    private static final String MOCK_SOURCE = "mock";
+    private static final int HISTORY_DAYS = 21;
 
-    private final HistoryDataService historyDataService;
-    private boolean mockImplausible = false;
-    private Random rand = new Random();
+    private final StatisticsPipeline pipeline;
 
-    public MockStatisticClient(HistoryDataService historyDataService) {
-        this.historyDataService = historyDataService;
+    public MockStatisticClient(
+            HistoryDataService historyDataService,
+            StatisticsPlausibilityFilter plausibilityFilter) {
+        SevenDayAverageStage sevenDayAverage =
+                new SevenDayAverageStage(historyDataService, MOCK_SOURCE);
+        this.pipeline =
+                new StatisticsPipeline(
+                        "mock-source",
+                        MockStatisticClient::newStatistics,
+                        List.of(new MockSource()),
+                        List.of(sevenDayAverage, plausibilityFilter, sevenDayAverage::store),
+                        1,
+                        Duration.ofSeconds(10),
+                        Clock.systemDefaultZone());
     }
 
     /**
-     * returns an implausible total active users value on every second method call
+     * runs the pipeline once, the mock source is loaded on every run
      *
      * @return
      */
     @Override
     public Statistics getStatistics() {
+        return pipeline.run(false);
+    }
+
+    /** stops the source thread */
+    public void shutdown() {
+        pipeline.shutdown();
+    }
+
+    private static Statistics newStatistics() {
         LocalDate today = LocalDate.now();
         Statistics statistics = new Statistics();
-        int totalActiveUsers = 1600000 + rand.nextInt(250000);
-        if (mockImplausible) {
-            totalActiveUsers /= 4;
-        }
-        statistics.setTotalActiveUsers(totalActiveUsers);
         statistics.setLastUpdated(today);
-        LocalDate dayDate = LocalDate.now().minusDays(21);
-        for (int i = 0; dayDate.isBefore(today); i++) {
-            History history = new History();
-            history.setDate(dayDate);
-            history.setCovidcodesEntered(50 + i * 2);
-            if (i > 1 && i < 20) {
-                history.setNewInfections((int) (210 + Math.pow(i, 2)));
-            }
-            // history.setNewInfectionsSevenDayAverage((int) (250 + Math.pow(i, 2)));
-            statistics.getHistory().add(history);
+        statistics.setHistory(new HistorySeries(today.minusDays(HISTORY_DAYS), HISTORY_DAYS));
+        return statistics;
+    }
+
+    /** generates the active users and the history, loaded on every run */
+    private static class MockSource implements MetricSource {
+        // toggled by every load, which runs on a thread of the pipeline
+        private volatile boolean mockImplausible = false;
+        private final Random rand = new Random();
 
-            dayDate = dayDate.plusDays(1);
+        @Override
+        public String getName() {
+            return MOCK_SOURCE;
         }
 
-        StatisticHelper.calculateRollingAverage(statistics);
+        @Override
+        public Duration getRefreshInterval() {
+            return Duration.ZERO;
+        }
 
-        Integer latestSevenDayAverage = null;
-        Integer prevWeekSevenDayAverage = null;
-        for (int i = statistics.getHistory().size() - 1; i > 0; i--) {
-            latestSevenDayAverage =
-                    statistics.getHistory().get(i).getNewInfectionsSevenDayAverage();
-            if (latestSevenDayAverage != null) {
-                LocalDate day = statistics.getHistory().get(i).getDate();
-                historyDataService.upsertLatestSevenDayAvgForDay(latestSevenDayAverage, day);
-                prevWeekSevenDayAverage =
-                        historyDataService.findLatestSevenDayAvgForDay(day.minusDays(7));
-                if (prevWeekSevenDayAverage == null) {
-                    logger.warn(
-                            "no seven day avg history for {}. using current data as fallback", day);
-                    prevWeekSevenDayAverage =
-                            statistics.getHistory().get(i - 7).getNewInfectionsSevenDayAverage();
-                }
-                break;
+        /** returns an implausible total active users value on every second load */
+        @Override
+        public MetricResult load() {
+            int totalActiveUsers = 1600000 + rand.nextInt(250000);
+            if (mockImplausible) {
+                totalActiveUsers /= 4;
             }
+            mockImplausible = !mockImplausible;
+            int activeUsers = totalActiveUsers;
+            return statistics -> {
+                statistics.setTotalActiveUsers(activeUsers);
+                HistorySeries history = statistics.getHistory();
+                for (int i = 0; i < history.size(); i++) {
+                    history.covidcodesEntered().set(i, 50 + i * 2);
+                    if (i > 1 && i < 20) {
+                        history.newInfections().set(i, (int) (210 + Math.pow(i, 2)));
+                    }
+                }
+            };
         }
-        statistics.setNewInfectionsSevenDayAvg(latestSevenDayAverage);
-        statistics.setNewInfectionsSevenDayAvgRelPrevWeek(
-                (latestSevenDayAverage / (double) prevWeekSevenDayAverage) - 1);
-
-        mockImplausible = !mockImplausible;
-        return statistics;
     }
 }
@@ -0,0 +1,168 @@
+package org.dpppt.additionalinfo.backend.ws.statistics;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.HistorySeries;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.IntColumn;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+
+/**
+ * A value of the statistics which is checked by {@link PlausibilityRule}s. The names match the
+ * names of {@link Statistics#getStaleFields()}.
+ *
+ * <p>Daily fields are columns of the history, their value is the value of the latest day with
+ * data. Rejecting a daily field reverts the whole history and the values derived from it, so that
+ * the published statistics stay consistent.
+ */
+public class PlausibilityField {
+
+    public static final PlausibilityField TOTAL_ACTIVE_USERS =
+            scalar(
+                    "totalActiveUsers",
+                    Statistics::getTotalActiveUsers,
+                    (candidate, current) ->
+                            candidate.setTotalActiveUsers(current.getTotalActiveUsers()));
+    public static final PlausibilityField TOTAL_COVIDCODES_ENTERED =
+            scalar(
+                    "totalCovidcodesEntered",
+                    Statistics::getTotalCovidcodesEntered,
+                    (candidate, current) ->
+                            candidate.setTotalCovidcodesEntered(
+                                    current.getTotalCovidcodesEntered()));
+    public static final PlausibilityField COVIDCODES_ENTERED_0_TO_2D_PREV_WEEK =
+            scalar(
+                    "covidcodesEntered0to2dPrevWeek",
+                    Statistics::getCovidcodesEntered0to2dPrevWeek,
+                    (candidate, current) ->
+                            candidate.setCovidcodesEntered0to2dPrevWeek(
+                                    current.getCovidcodesEntered0to2dPrevWeek()));
+    public static final PlausibilityField NEW_INFECTIONS_SEVEN_DAY_AVG =
+            scalar(
+                    "newInfectionsSevenDayAvg",
+                    Statistics::getNewInfectionsSevenDayAvg,
+                    (candidate, current) ->
+                            candidate.setNewInfectionsSevenDayAvg(
+                                    current.getNewInfectionsSevenDayAvg()));
+    public static final PlausibilityField NEW_INFECTIONS_SEVEN_DAY_AVG_REL_PREV_WEEK =
+            scalar(
+                    "newInfectionsSevenDayAvgRelPrevWeek",
+                    Statistics::getNewInfectionsSevenDayAvgRelPrevWeek,
+                    (candidate, current) ->
+                            candidate.setNewInfectionsSevenDayAvgRelPrevWeek(
+                                    current.getNewInfectionsSevenDayAvgRelPrevWeek()));
+    public static final PlausibilityField NEW_INFECTIONS =
+            daily("history.newInfections", HistorySeries::newInfections);
+    public static final PlausibilityField COVIDCODES_ENTERED =
+            daily("history.covidcodesEntered", HistorySeries::covidcodesEntered);
+
+    private final String name;
+    private final Function<Statistics, Number> value;
+    // null for fields which are not a column of the history
+    private final Function<HistorySeries, IntColumn> column;
+    private final BiConsumer<Statistics, Statistics> revert;
+
+    private PlausibilityField(
+            String name,
+            Function<Statistics, Number> value,
+            Function<HistorySeries, IntColumn> column,
+            BiConsumer<Statistics, Statistics> revert) {
+        this.name = name;
+        this.value = value;
+        this.column = column;
+        this.revert = revert;
+    }
+
+    private static PlausibilityField scalar(
+            String name,
+            Function<Statistics, Number> value,
+            BiConsumer<Statistics, Statistics> revert) {
+        return new PlausibilityField(name, value, null, revert);
+    }
+
+    private static PlausibilityField daily(
+            String name, Function<HistorySeries, IntColumn> column) {
+        return new PlausibilityField(
+                name,
+                statistics -> {
+                    IntColumn values = column.apply(statistics.getHistory());
+                    int latest = latestIndex(values);
+                    return latest >= 0 ? values.get(latest) : null;
+                },
+                column,
+                PlausibilityField::revertHistory);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** returns true if the field is a column of the history */
+    public boolean isDaily() {
+        return column != null;
+    }
+
+    /**
+     * @param statistics
+     * @return the value of the field or null if it has none
+     */
+    public Double value(Statistics statistics) {
+        Number number = value.apply(statistics);
+        return number != null ? number.doubleValue() : null;
+    }
+
+    /**
+     * returns a copy of everything the rules of the field can look at, e.g. the whole column of a
+     * daily field. Equal copies get the same verdict.
+     *
+     * @param statistics
+     * @return a value which can be compared with {@link Object#equals(Object)}, may be null
+     */
+    public Object checkedValues(Statistics statistics) {
+        if (column == null) {
+            return value(statistics);
+        }
+        HistorySeries history = statistics.getHistory();
+        return List.of(history.getStartDate(), new IntColumn(column.apply(history)));
+    }
+
+    /**
+     * @param statistics
+     * @return the column of a daily field
+     * @throws IllegalStateException if the field is not daily
+     */
+    public IntColumn column(Statistics statistics) {
+        if (column == null) {
+            throw new IllegalStateException(name + " is not a daily field");
+        }
+        return column.apply(statistics.getHistory());
+    }
+
+    /**
+     * replaces the value of the field in the candidate by the value of the current statistics
+     *
+     * @param candidate
+     * @param current
+     */
+    public void revert(Statistics candidate, Statistics current) {
+        revert.accept(candidate, current);
+    }
+
+    /** returns the index of the latest day with a value or -1 if there is none */
+    public static int latestIndex(IntColumn values) {
+        return values.presence().previousSetBit(values.size() - 1);
+    }
+
+    private static void revertHistory(Statistics candidate, Statistics current) {
+        candidate.setHistory(new HistorySeries(current.getHistory()));
+        candidate.setTotalCovidcodesEntered(current.getTotalCovidcodesEntered());
+        candidate.setNewInfectionsSevenDayAvg(current.getNewInfectionsSevenDayAvg());
+        candidate.setNewInfectionsSevenDayAvgRelPrevWeek(
+                current.getNewInfectionsSevenDayAvgRelPrevWeek());
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
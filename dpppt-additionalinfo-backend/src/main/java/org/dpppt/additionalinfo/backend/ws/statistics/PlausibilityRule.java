@@ -0,0 +1,25 @@
+package org.dpppt.additionalinfo.backend.ws.statistics;
+
+import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+
+/**
+ * A check of a single field of new statistics before they are published, see {@link
+ * StatisticsPlausibilityFilter}. Rules must not modify the statistics and should not take more
+ * than one pass over the history.
+ */
+public interface PlausibilityRule {
+
+    /** short name of the rule, used to tag the rejections */
+    public String getName();
+
+    /** the field which is checked */
+    public PlausibilityField getField();
+
+    /**
+     * @param value the value of the field in the candidate, never null
+     * @param candidate the new statistics
+     * @param current the last accepted statistics
+     * @return false if the value is implausible and should not be published
+     */
+    public boolean isPlausible(double value, Statistics candidate, Statistics current);
+}
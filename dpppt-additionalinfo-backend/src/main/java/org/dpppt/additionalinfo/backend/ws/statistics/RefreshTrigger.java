@@ -0,0 +1,182 @@
+package org.dpppt.additionalinfo.backend.ws.statistics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.TriggerContext;
+
+/**
+ * Schedules a refresh at a fixed interval. Runs are aligned to multiples of the interval (e.g. the
+ * full hour) plus a random offset which is chosen once per instance, so that the instances do not
+ * all query the statistic source in the same second. After a failed refresh, the next run is
+ * retried earlier, with an exponentially growing delay.
+ *
+ * <p>The trigger only knows the outcome of refreshes which are run through {@link
+ * #task(BooleanSupplier)}. The next run, the last success and the number of consecutive failures
+ * are exposed as gauges, tagged with the name of the refresh.
+ */
+public class RefreshTrigger implements Trigger {
+
+    private static final Logger logger = LoggerFactory.getLogger(RefreshTrigger.class);
+
+    private final String name;
+    private final Duration interval;
+    private final Duration offset;
+    private final Duration retryDelay;
+    private final Duration maxRetryDelay;
+    private final Clock clock;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile Instant lastSuccess;
+    private volatile Instant nextRun;
+
+    /**
+     * @param name
+     * @param interval time between two regular runs
+     * @param maxJitter upper bound of the offset of this instance
+     * @param retryDelay delay of the first retry after a failure, doubled for every further failure
+     * @param maxRetryDelay upper bound of the retry delay
+     * @param meterRegistry
+     */
+    public RefreshTrigger(
+            String name,
+            Duration interval,
+            Duration maxJitter,
+            Duration retryDelay,
+            Duration maxRetryDelay,
+            MeterRegistry meterRegistry) {
+        this(
+                name,
+                interval,
+                Duration.ofMillis(ThreadLocalRandom.current().nextLong(maxJitter.toMillis() + 1)),
+                retryDelay,
+                maxRetryDelay,
+                Clock.systemUTC(),
+                meterRegistry);
+    }
+
+    /**
+     * @param name
+     * @param interval time between two regular runs
+     * @param offset offset of the regular runs from the multiples of the interval
+     * @param retryDelay delay of the first retry after a failure, doubled for every further failure
+     * @param maxRetryDelay upper bound of the retry delay
+     * @param clock
+     * @param meterRegistry
+     */
+    public RefreshTrigger(
+            String name,
+            Duration interval,
+            Duration offset,
+            Duration retryDelay,
+            Duration maxRetryDelay,
+            Clock clock,
+            MeterRegistry meterRegistry) {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        this.name = name;
+        this.interval = interval;
+        this.offset = offset;
+        this.retryDelay = retryDelay;
+        this.maxRetryDelay = maxRetryDelay;
+        this.clock = clock;
+
+        Gauge.builder(
+                        "statistics.refresh.next.run",
+                        this,
+                        t -> t.nextRun != null ? t.nextRun.getEpochSecond() : Double.NaN)
+                .tag("refresh", name)
+                .description("the time of the next scheduled run in seconds since the epoch")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder(
+                        "statistics.refresh.last.success",
+                        this,
+                        t -> t.lastSuccess != null ? t.lastSuccess.getEpochSecond() : Double.NaN)
+                .tag("refresh", name)
+                .description("the time of the last successful run in seconds since the epoch")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder(
+                        "statistics.refresh.consecutive.failures",
+                        consecutiveFailures,
+                        Number::doubleValue)
+                .tag("refresh", name)
+                .description("the number of failed runs since the last successful one")
+                .register(meterRegistry);
+        logger.info("Refresh {} every {} with an offset of {}", name, interval, offset);
+    }
+
+    /**
+     * wraps the given refresh, so that its outcome is taken into account for the next run
+     *
+     * @param refresh returns false (or throws) if the refresh failed and should be retried
+     * @return
+     */
+    public Runnable task(BooleanSupplier refresh) {
+        return () -> {
+            boolean success;
+            try {
+                success = refresh.getAsBoolean();
+            } catch (RuntimeException e) {
+                logger.error("Refresh " + name + " failed: ", e);
+                success = false;
+            }
+            if (success) {
+                consecutiveFailures.set(0);
+                lastSuccess = clock.instant();
+            } else {
+                int failures = consecutiveFailures.incrementAndGet();
+                logger.warn("Refresh {} failed {} times in a row", name, failures);
+            }
+        };
+    }
+
+    @Override
+    public Date nextExecutionTime(TriggerContext triggerContext) {
+        Instant now = clock.instant();
+        Instant next = nextRegularRun(now);
+        int failures = consecutiveFailures.get();
+        if (failures > 0) {
+            Instant retry = now.plus(retryDelay(failures));
+            if (retry.isBefore(next)) {
+                next = retry;
+            }
+        }
+        nextRun = next;
+        return Date.from(next);
+    }
+
+    /** the first regular run after the given time */
+    Instant nextRegularRun(Instant now) {
+        long intervalMillis = interval.toMillis();
+        long offsetMillis = offset.toMillis() % intervalMillis;
+        long periods = Math.floorDiv(now.toEpochMilli() - offsetMillis, intervalMillis) + 1;
+        return Instant.ofEpochMilli(periods * intervalMillis + offsetMillis);
+    }
+
+    /** the delay before the next retry after the given number of consecutive failures */
+    Duration retryDelay(int failures) {
+        // 2^30 times the retry delay exceeds any sensible maximum
+        Duration delay = retryDelay.multipliedBy(1L << Math.min(failures - 1, 30));
+        return delay.compareTo(maxRetryDelay) > 0 ? maxRetryDelay : delay;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    public Instant getLastSuccess() {
+        return lastSuccess;
+    }
+}
@@ -0,0 +1,45 @@
+package org.dpppt.additionalinfo.backend.ws.statistics;
+
+import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+
+/**
+ * rejects values which changed too much compared to the published value, e.g. the active users
+ * which splunk sometimes reports too low (especially at night)
+ */
+public class RelativeChangeRule implements PlausibilityRule {
+
+    private final PlausibilityField field;
+    private final double minRatio;
+    private final double maxRatio;
+
+    /**
+     * @param field
+     * @param minRatio smallest plausible ratio of the new to the published value
+     * @param maxRatio largest plausible ratio of the new to the published value
+     */
+    public RelativeChangeRule(PlausibilityField field, double minRatio, double maxRatio) {
+        this.field = field;
+        this.minRatio = minRatio;
+        this.maxRatio = maxRatio;
+    }
+
+    @Override
+    public String getName() {
+        return "relative";
+    }
+
+    @Override
+    public PlausibilityField getField() {
+        return field;
+    }
+
+    @Override
+    public boolean isPlausible(double value, Statistics candidate, Statistics current) {
+        Double currentValue = field.value(current);
+        if (currentValue == null || currentValue == 0) {
+            return true;
+        }
+        double ratio = value / currentValue;
+        return ratio >= minRatio && ratio <= maxRatio;
+    }
+}
@@ -0,0 +1,114 @@
+package org.dpppt.additionalinfo.backend.ws.statistics;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.IntColumn;
+
+/**
+ * Rolling means over a daily series of primitive values. Missing values
+ * are marked in a separate presence bitmap and are skipped. A day only gets a value if its whole
+ * window lies between the first and the last present value of the series.
+ *
+ * <p>The window sum is maintained while moving the window (one addition and one subtraction per
+ * day), so the computation is linear in the length of the series and independent of the window
+ * size. Apart from the result columns passed in by the caller, nothing is allocated.
+ */
+public class RollingAggregate {
+
+    public enum Alignment {
+        /** the window ends at the day itself */
+        TRAILING,
+        /** the window is centered around the day, requires an odd window size */
+        CENTERED
+    }
+
+    private final int window;
+    private final Alignment alignment;
+    private final int daysBefore;
+    private final int daysAfter;
+
+    public RollingAggregate(int window, Alignment alignment) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be positive: " + window);
+        }
+        if (alignment == Alignment.CENTERED && window % 2 == 0) {
+            throw new IllegalArgumentException("centered window must be odd: " + window);
+        }
+        this.window = window;
+        this.alignment = alignment;
+        this.daysBefore = alignment == Alignment.CENTERED ? window / 2 : window - 1;
+        this.daysAfter = alignment == Alignment.CENTERED ? window / 2 : 0;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public Alignment getAlignment() {
+        return alignment;
+    }
+
+    /**
+     * computes the mean of the present values within the window of every day (integer division)
+     *
+     * @param values
+     * @param means output, days without a complete window have no value
+     */
+    public void mean(IntColumn values, IntColumn means) {
+        mean(values.values(), values.presence(), means.values(), means.presence());
+    }
+
+    /**
+     * computes the mean of the present values within the window of every day (integer division)
+     *
+     * @param values
+     * @param present whether the value of a day is present
+     * @param means output, the mean of every day, 0 if it could not be computed
+     * @param meansPresent output, whether a mean could be computed for a day
+     */
+    public void mean(int[] values, BitSet present, int[] means, BitSet meansPresent) {
+        int length = values.length;
+        // days without a mean must not keep the value of an earlier computation
+        meansPresent.clear();
+        Arrays.fill(means, 0);
+        int first = present.nextSetBit(0);
+        int last = present.previousSetBit(length - 1);
+        if (first < 0 || first >= length) {
+            return;
+        }
+        int firstDay = first + daysBefore;
+        int lastDay = last - daysAfter;
+        if (firstDay > lastDay) {
+            return;
+        }
+
+        long sum = 0;
+        int count = 0;
+        for (int day = firstDay - daysBefore; day <= firstDay + daysAfter; day++) {
+            if (present.get(day)) {
+                sum += values[day];
+                count++;
+            }
+        }
+        for (int day = firstDay; ; day++) {
+            if (count > 0) {
+                meansPresent.set(day);
+                means[day] = (int) (sum / count);
+            }
+            if (day == lastDay) {
+                break;
+            }
+            // move the window by one day
+            int leaving = day - daysBefore;
+            if (present.get(leaving)) {
+                sum -= values[leaving];
+                count--;
+            }
+            int entering = day + daysAfter + 1;
+            if (present.get(entering)) {
+                sum += values[entering];
+                count++;
+            }
+        }
+    }
+}
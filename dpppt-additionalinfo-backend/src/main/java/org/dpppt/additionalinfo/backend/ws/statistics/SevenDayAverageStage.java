@@ -0,0 +1,85 @@
+package org.dpppt.additionalinfo.backend.ws.statistics;
+
+import java.time.LocalDate;
+import java.util.Set;
+import org.dpppt.additionalinfo.backend.ws.data.HistoryDataService;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.IntColumn;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Computes the seven day average of the new infections, the latest seven day average and its
+ * change compared to the previous week. The latest seven day average of every day is stored by
+ * {@link #store(Statistics, Set)}, so that the comparison uses the value which was published a
+ * week ago.
+ */
+public class SevenDayAverageStage implements DerivedMetricStage {
+
+    private static final Logger logger = LoggerFactory.getLogger(SevenDayAverageStage.class);
+
+    private final HistoryDataService historyDataService;
+    private final String newInfectionsSource;
+
+    /**
+     * @param historyDataService
+     * @param newInfectionsSource the source of the new infections, the latest seven day average is
+     *     only stored when it was loaded
+     */
+    public SevenDayAverageStage(HistoryDataService historyDataService, String newInfectionsSource) {
+        this.historyDataService = historyDataService;
+        this.newInfectionsSource = newInfectionsSource;
+    }
+
+    @Override
+    public void apply(Statistics statistics, Set<String> refreshedSources) {
+        StatisticHelper.calculateRollingAverage(statistics);
+
+        IntColumn sevenDayAverages = statistics.getHistory().newInfectionsSevenDayAverage();
+        Integer latestSevenDayAverage = null;
+        Integer prevWeekSevenDayAverage = null;
+        for (int i = sevenDayAverages.size() - 1; i > 0; i--) {
+            latestSevenDayAverage = sevenDayAverages.get(i);
+            if (latestSevenDayAverage != null) {
+                LocalDate day = statistics.getHistory().getDate(i);
+                prevWeekSevenDayAverage =
+                        historyDataService.findLatestSevenDayAvgForDay(day.minusDays(7));
+                if (prevWeekSevenDayAverage == null) {
+                    logger.warn(
+                            "no seven day avg history for {}. using current data as fallback", day);
+                    prevWeekSevenDayAverage = sevenDayAverages.get(i - 7);
+                }
+                break;
+            }
+        }
+        statistics.setNewInfectionsSevenDayAvg(latestSevenDayAverage);
+        statistics.setNewInfectionsSevenDayAvgRelPrevWeek(
+                (latestSevenDayAverage / (double) prevWeekSevenDayAverage) - 1);
+    }
+
+    /**
+     * stores the latest seven day average, if the new infections were loaded and accepted. Runs
+     * as a stage of its own after the {@link StatisticsPlausibilityFilter}.
+     *
+     * @param statistics
+     * @param refreshedSources
+     */
+    public void store(Statistics statistics, Set<String> refreshedSources) {
+        if (!refreshedSources.contains(newInfectionsSource)
+                || StatisticsPlausibilityFilter.isHistoryRejected(statistics)
+                || statistics
+                        .getRejectedFields()
+                        .contains(PlausibilityField.NEW_INFECTIONS_SEVEN_DAY_AVG.getName())) {
+            return;
+        }
+        IntColumn sevenDayAverages = statistics.getHistory().newInfectionsSevenDayAverage();
+        for (int i = sevenDayAverages.size() - 1; i > 0; i--) {
+            Integer latestSevenDayAverage = sevenDayAverages.get(i);
+            if (latestSevenDayAverage != null) {
+                historyDataService.upsertLatestSevenDayAvgForDay(
+                        latestSevenDayAverage, statistics.getHistory().getDate(i));
+                return;
+            }
+        }
+    }
+}
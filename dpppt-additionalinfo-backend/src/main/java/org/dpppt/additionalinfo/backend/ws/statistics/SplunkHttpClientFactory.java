@@ -0,0 +1,85 @@
+package org.dpppt.additionalinfo.backend.ws.statistics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.PoolingHttpClientConnectionManagerMetricsBinder;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * Creates the pooled http client for the splunk searches. Connections are kept alive and reused
+ * between searches and reloads, so that not every search has to do a new TLS handshake. The pool
+ * statistics are exposed as httpcomponents.httpclient.pool.* gauges with pool=splunk.
+ */
+public class SplunkHttpClientFactory {
+
+    private static final String USER_AGENT = "dp3t-additional-info-backend";
+
+    private SplunkHttpClientFactory() {}
+
+    /**
+     * @param maxConnections total number of pooled connections
+     * @param maxConnectionsPerRoute number of pooled connections to the splunk host
+     * @param connectTimeout
+     * @param socketTimeout maximal time without data on an open connection
+     * @param connectionRequestTimeout maximal time to wait for a connection from the pool
+     * @param keepAlive how long an idle connection is kept if splunk does not send a keep-alive
+     *     timeout, or at most
+     * @param idleTimeout idle connections are closed by a background thread after this time
+     * @param meterRegistry
+     * @return
+     */
+    public static CloseableHttpClient create(
+            int maxConnections,
+            int maxConnectionsPerRoute,
+            Duration connectTimeout,
+            Duration socketTimeout,
+            Duration connectionRequestTimeout,
+            Duration keepAlive,
+            Duration idleTimeout,
+            MeterRegistry meterRegistry) {
+        PoolingHttpClientConnectionManager connectionManager =
+                new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        // connections which were idle for a while might have been closed by a proxy
+        connectionManager.setValidateAfterInactivity(1000);
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "splunk")
+                .bindTo(meterRegistry);
+
+        // use the keep-alive timeout of the server, but never keep connections longer than
+        // keepAlive
+        long maxKeepAliveMillis = keepAlive.toMillis();
+        ConnectionKeepAliveStrategy keepAliveStrategy =
+                (response, context) -> {
+                    long serverKeepAlive =
+                            DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(
+                                    response, context);
+                    return serverKeepAlive > 0
+                            ? Math.min(serverKeepAlive, maxKeepAliveMillis)
+                            : maxKeepAliveMillis;
+                };
+
+        return HttpClients.custom()
+                .useSystemProperties()
+                .setUserAgent(USER_AGENT)
+                .disableCookieManagement()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .setDefaultRequestConfig(
+                        RequestConfig.custom()
+                                .setConnectTimeout((int) connectTimeout.toMillis())
+                                .setSocketTimeout((int) socketTimeout.toMillis())
+                                .setConnectionRequestTimeout(
+                                        (int) connectionRequestTimeout.toMillis())
+                                .build())
+                .build();
+    }
+}
@@ -0,0 +1,217 @@
+package org.dpppt.additionalinfo.backend.ws.statistics;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CancellationException;
+import java.util.function.Supplier;
+import org.springframework.web.client.RestClientResponseException;
+
+/**
+ * Micrometer meters of the splunk searches and the reloads. All search meters are tagged with the
+ * name of the search, so that the prometheus scrape shows where the reload time goes:
+ *
+ * <ul>
+ *   <li>splunk.search: duration of every search, by outcome
+ *   <li>splunk.search.received: bytes of the response bodies
+ *   <li>splunk.search.results: final results parsed
+ *   <li>splunk.search.preview.dropped: preview results skipped
+ *   <li>splunk.search.failures: failed searches, by cause
+ *   <li>statistics.reload: duration of every reload, by mode (full, backfill, activeapps) and
+ *       outcome (success, partial if the last result of a failed search was reused, failure)
+ *   <li>statistics.source.age: time since the last successful load of every search
+ * </ul>
+ */
+public class SplunkMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    public SplunkMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /** starts timing a search or reload */
+    public Timer.Sample start() {
+        return Timer.start(meterRegistry);
+    }
+
+    /**
+     * records a search which returned a response
+     *
+     * @param search
+     * @param sample
+     * @param receivedBytes
+     * @param results number of final results
+     * @param droppedPreviewResults number of skipped preview results
+     */
+    public void searchSucceeded(
+            String search,
+            Timer.Sample sample,
+            long receivedBytes,
+            int results,
+            int droppedPreviewResults) {
+        sample.stop(searchTimer(search, "success"));
+        DistributionSummary.builder("splunk.search.received")
+                .tag("search", search)
+                .baseUnit("bytes")
+                .description("size of the splunk responses")
+                .register(meterRegistry)
+                .record(receivedBytes);
+        Counter.builder("splunk.search.results")
+                .tag("search", search)
+                .description("final results parsed from the splunk responses")
+                .register(meterRegistry)
+                .increment(results);
+        Counter.builder("splunk.search.preview.dropped")
+                .tag("search", search)
+                .description("preview results skipped in the splunk responses")
+                .register(meterRegistry)
+                .increment(droppedPreviewResults);
+    }
+
+    /**
+     * records a failed search
+     *
+     * @param search
+     * @param sample
+     * @param cause see {@link #causeOf(Throwable)}
+     */
+    public void searchFailed(String search, Timer.Sample sample, String cause) {
+        sample.stop(searchTimer(search, "failure"));
+        Counter.builder("splunk.search.failures")
+                .tag("search", search)
+                .tag("cause", cause)
+                .description("failed splunk searches")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * records a reload
+     *
+     * @param mode full, backfill or activeapps
+     * @param sample
+     * @param outcome success, partial or failure
+     */
+    public void reloaded(String mode, Timer.Sample sample, String outcome) {
+        sample.stop(
+                Timer.builder("statistics.reload")
+                        .tag("mode", mode)
+                        .tag("outcome", outcome)
+                        .description("duration of the statistics reloads")
+                        .publishPercentileHistogram()
+                        .register(meterRegistry));
+    }
+
+    /**
+     * registers a gauge of the time since the last successful load of a search
+     *
+     * @param search
+     * @param loadedAt returns the time of the last successful load, or null if there was none
+     */
+    public void registerSourceAge(String search, Supplier<Instant> loadedAt) {
+        Gauge.builder(
+                        "statistics.source.age",
+                        loadedAt,
+                        l -> {
+                            Instant at = l.get();
+                            return at != null
+                                    ? Duration.between(at, Instant.now()).toMillis() / 1000.0
+                                    : Double.NaN;
+                        })
+                .tag("search", search)
+                // the supplier is not referenced anywhere else
+                .strongReference(true)
+                .baseUnit("seconds")
+                .description("time since the last successful load of the search")
+                .register(meterRegistry);
+    }
+
+    /**
+     * classifies the cause of a failed search: cancelled (deadline exceeded or another search
+     * failed), timeout (socket timeout), status (no 200 OK), parse (invalid response), io (other
+     * connection problems) or other
+     *
+     * @param e
+     * @return
+     */
+    public static String causeOf(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SocketTimeoutException) {
+                return "timeout";
+            }
+            if (t instanceof InterruptedException
+                    || t instanceof InterruptedIOException
+                    || t instanceof CancellationException) {
+                return "cancelled";
+            }
+            if (t instanceof RestClientResponseException) {
+                return "status";
+            }
+            if (t instanceof JsonProcessingException) {
+                return "parse";
+            }
+            if (t instanceof IOException) {
+                return "io";
+            }
+        }
+        return Thread.currentThread().isInterrupted() ? "cancelled" : "other";
+    }
+
+    private Timer searchTimer(String search, String outcome) {
+        return Timer.builder("splunk.search")
+                .tag("search", search)
+                .tag("outcome", outcome)
+                .description("duration of the splunk searches, including parsing the response")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /** counts the bytes read from a response body */
+    static class CountingInputStream extends FilterInputStream {
+        private long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.dpppt.additionalinfo.backend.ws.statistics;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads the response from the splunk api (not fully valid json, but single json objects, line by
+ * line) directly from the response stream, one {@link SplunkResult} at a time. The "NO_DATA" values
+ * are mapped to null while parsing (see {@link
+ * org.dpppt.additionalinfo.backend.ws.json.NoDataIntegerDeserializer}).
+ */
+public class SplunkResponseParser {
+
+    // object readers are immutable and thread safe, so one instance is shared by all searches
+    private static final ObjectReader READER =
+            new ObjectMapper().readerFor(SplunkResponse.class);
+    private static final ObjectReader RESULT_READER =
+            new ObjectMapper().readerFor(SplunkResult.class);
+
+    private SplunkResponseParser() {}
+
+    /**
+     * parses the given splunk response and passes every final (non-preview) result to the consumer
+     *
+     * @param splunkApiResponse
+     * @param consumer
+     * @return the number of preview results which were skipped
+     * @throws IOException
+     */
+    public static int parse(InputStream splunkApiResponse, Consumer<SplunkResult> consumer)
+            throws IOException {
+        int skippedPreviewResults = 0;
+        try (MappingIterator<SplunkResponse> responses = READER.readValues(splunkApiResponse)) {
+            while (responses.hasNextValue()) {
+                SplunkResponse response = responses.nextValue();
+                if (Boolean.TRUE.equals(response.getPreview())) {
+                    skippedPreviewResults++;
+                } else if (response.getResult() != null) {
+                    consumer.accept(response.getResult());
+                }
+            }
+        }
+        return skippedPreviewResults;
+    }
+
+    /**
+     * parses a page of results of a search job (a single json object with the results in the
+     * "results" array) and passes every result to the consumer
+     *
+     * @param resultsPage
+     * @param consumer
+     * @return the number of results in the page
+     * @throws IOException
+     */
+    public static int parseResultsPage(InputStream resultsPage, Consumer<SplunkResult> consumer)
+            throws IOException {
+        int results = 0;
+        try (JsonParser parser = RESULT_READER.getFactory().createParser(resultsPage)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a page of results");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.START_ARRAY && "results".equals(field)) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        consumer.accept(RESULT_READER.readValue(parser));
+                        results++;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * parses the given splunk response and returns the final (non-preview) results in descending
+     * order by time.
+     *
+     * @param splunkApiResponse
+     * @return
+     * @throws IOException
+     */
+    public static List<SplunkResult> parseDescendingByTime(InputStream splunkApiResponse)
+            throws IOException {
+        List<SplunkResult> results = new ArrayList<>();
+        parse(splunkApiResponse, results::add);
+        sortDescendingByTime(results);
+        return results;
+    }
+
+    /**
+     * sorts the given results in descending order by time
+     *
+     * @param results
+     */
+    public static void sortDescendingByTime(List<SplunkResult> results) {
+        Collections.sort(
+                results, Collections.reverseOrder(Comparator.comparing(SplunkResult::getTime)));
+    }
+}
@@ -6,6 +6,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
 import java.time.LocalDateTime;
+import org.dpppt.additionalinfo.backend.ws.json.NoDataIntegerDeserializer;
 
 /** This class is used to represent multiple splunk result variants */
 @JsonIgnoreProperties(ignoreUnknown = true)
@@ -17,25 +18,32 @@ public class SplunkResult {
     private LocalDateTime time;
 
     @JsonProperty(value = "active Apps")
+    @JsonDeserialize(using = NoDataIntegerDeserializer.class)
     private Integer activeApps;
 
     @JsonProperty(value = "usedAuthorizationCodeCount")
+    @JsonDeserialize(using = NoDataIntegerDeserializer.class)
     private Integer usedAuthorizationCodesCount;
 
     @JsonProperty(value = "positiveTestCount")
+    @JsonDeserialize(using = NoDataIntegerDeserializer.class)
     private Integer positiveTestCount;
 
     /** queryCovidCodesEnteredAfterXDaysOnsetOfSymptoms result */
     @JsonProperty(value = "00_days")
+    @JsonDeserialize(using = NoDataIntegerDeserializer.class)
     private Integer afterZeroDays;
 
     @JsonProperty(value = "01_days")
+    @JsonDeserialize(using = NoDataIntegerDeserializer.class)
     private Integer afterOneDays;
 
     @JsonProperty(value = "02_days")
+    @JsonDeserialize(using = NoDataIntegerDeserializer.class)
     private Integer afterTwoDays;
 
     @JsonProperty(value = "Total")
+    @JsonDeserialize(using = NoDataIntegerDeserializer.class)
     private Integer total;
 
     public LocalDateTime getTime() {
@@ -74,10 +82,6 @@ public class SplunkResult {
         return (afterZeroDays != null) ? afterZeroDays : 0;
     }
 
-    public void setAfterZeroDays(String afterZeroDays) {
-        this.afterZeroDays = Integer.parseInt(afterZeroDays);
-    }
-
     public void setAfterZeroDays(Integer afterZeroDays) {
         this.afterZeroDays = afterZeroDays;
     }
@@ -86,10 +90,6 @@ public class SplunkResult {
         return (afterOneDays != null) ? afterOneDays : 0;
     }
 
-    public void setAfterOneDays(String afterOneDays) {
-        this.afterOneDays = Integer.parseInt(afterOneDays);
-    }
-
     public void setAfterOneDays(Integer afterOneDays) {
         this.afterOneDays = afterOneDays;
     }
@@ -98,10 +98,6 @@ public class SplunkResult {
         return (afterTwoDays != null) ? afterTwoDays : 0;
     }
 
-    public void setAfterTwoDays(String afterTwoDays) {
-        this.afterTwoDays = Integer.parseInt(afterTwoDays);
-    }
-
     public void setAfterTwoDays(Integer afterTwoDays) {
         this.afterTwoDays = afterTwoDays;
     }
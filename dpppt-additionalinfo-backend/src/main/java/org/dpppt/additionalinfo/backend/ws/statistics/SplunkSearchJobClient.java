@@ -0,0 +1,201 @@
+package org.dpppt.additionalinfo.backend.ws.statistics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.net.URI;
+import java.time.Duration;
+import java.util.function.Consumer;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.dpppt.additionalinfo.backend.ws.statistics.SplunkMetrics.CountingInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * Runs splunk searches as search jobs ({@link SplunkSearchMode#JOB}): the job is created, its
+ * status is polled with an exponentially growing delay until it is done, and the results are
+ * fetched in pages. Every request is short, so long searches do not run into the socket timeout.
+ * Jobs which did not finish (e.g. because the reload was cancelled) are cancelled on splunk.
+ */
+public class SplunkSearchJobClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(SplunkSearchJobClient.class);
+
+    private final String jobsUrl;
+    private final Duration initialPollDelay;
+    private final Duration maxPollDelay;
+    private final int pageSize;
+    private final RestTemplate rt;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * @param httpClient
+     * @param jobsUrl the search jobs endpoint, e.g. https://splunk:8089/services/search/jobs
+     * @param initialPollDelay delay before the first status request, doubled for every further one
+     * @param maxPollDelay upper bound of the delay between two status requests
+     * @param pageSize number of results fetched per request
+     */
+    public SplunkSearchJobClient(
+            CloseableHttpClient httpClient,
+            String jobsUrl,
+            Duration initialPollDelay,
+            Duration maxPollDelay,
+            int pageSize) {
+        this.jobsUrl = jobsUrl.endsWith("/") ? jobsUrl.substring(0, jobsUrl.length() - 1) : jobsUrl;
+        this.initialPollDelay = initialPollDelay;
+        this.maxPollDelay = maxPollDelay;
+        this.pageSize = pageSize;
+        this.rt = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+    }
+
+    /**
+     * runs the search and passes every result to the consumer, page by page
+     *
+     * @param params the parameters of the search (search, earliest_time, latest_time)
+     * @param headers the authentication headers
+     * @param consumer
+     * @return the number of bytes received with the results
+     * @throws Exception if a request failed, the job failed or the thread was interrupted
+     */
+    public long search(
+            MultiValueMap<String, String> params,
+            HttpHeaders headers,
+            Consumer<SplunkResult> consumer)
+            throws Exception {
+        String sid = createJob(params, headers);
+        boolean done = false;
+        try {
+            long resultCount = awaitJob(sid, headers);
+            done = true;
+            long receivedBytes = 0;
+            for (long offset = 0; offset < resultCount; offset += pageSize) {
+                receivedBytes += fetchResults(sid, offset, headers, consumer);
+            }
+            return receivedBytes;
+        } finally {
+            if (!done) {
+                cancelJob(sid, headers);
+            }
+        }
+    }
+
+    private String createJob(MultiValueMap<String, String> params, HttpHeaders headers)
+            throws Exception {
+        MultiValueMap<String, String> jobParams = new LinkedMultiValueMap<>(params);
+        jobParams.set("output_mode", "json");
+        JsonNode response =
+                rt.exchange(
+                                RequestEntity.post(new URI(jobsUrl))
+                                        .accept(MediaType.APPLICATION_JSON)
+                                        .headers(headers)
+                                        .body(jobParams),
+                                JsonNode.class)
+                        .getBody();
+        if (response == null || !response.hasNonNull("sid")) {
+            throw new IllegalStateException("Splunk did not return a search job id");
+        }
+        String sid = response.get("sid").asText();
+        logger.debug("Created search job " + sid);
+        return sid;
+    }
+
+    /**
+     * polls the status of the job until it is done
+     *
+     * @return the number of results
+     */
+    private long awaitJob(String sid, HttpHeaders headers) throws Exception {
+        URI statusUri =
+                UriComponentsBuilder.fromHttpUrl(jobsUrl)
+                        .pathSegment(sid)
+                        .queryParam("output_mode", "json")
+                        .build()
+                        .toUri();
+        Duration delay = initialPollDelay;
+        while (true) {
+            Thread.sleep(delay.toMillis());
+            JsonNode status =
+                    rt.exchange(
+                                    RequestEntity.get(statusUri)
+                                            .accept(MediaType.APPLICATION_JSON)
+                                            .headers(headers)
+                                            .build(),
+                                    JsonNode.class)
+                            .getBody();
+            JsonNode content = status == null ? null : status.path("entry").path(0).path("content");
+            if (content == null || content.isMissingNode()) {
+                throw new IllegalStateException("Invalid status of search job " + sid);
+            }
+            String dispatchState = content.path("dispatchState").asText();
+            if (content.path("isFailed").asBoolean() || "FAILED".equals(dispatchState)) {
+                throw new IllegalStateException("Search job " + sid + " failed");
+            }
+            if (content.path("isDone").asBoolean() || "DONE".equals(dispatchState)) {
+                return content.path("resultCount").asLong();
+            }
+            delay = delay.multipliedBy(2);
+            if (delay.compareTo(maxPollDelay) > 0) {
+                delay = maxPollDelay;
+            }
+        }
+    }
+
+    /**
+     * fetches one page of results
+     *
+     * @return the number of bytes received
+     */
+    private long fetchResults(
+            String sid, long offset, HttpHeaders headers, Consumer<SplunkResult> consumer) {
+        URI resultsUri =
+                UriComponentsBuilder.fromHttpUrl(jobsUrl)
+                        .pathSegment(sid, "results")
+                        .queryParam("output_mode", "json")
+                        .queryParam("offset", offset)
+                        .queryParam("count", pageSize)
+                        .build()
+                        .toUri();
+        RequestEntity<Void> request =
+                RequestEntity.get(resultsUri)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .headers(headers)
+                        .build();
+        return rt.execute(
+                resultsUri,
+                HttpMethod.GET,
+                rt.httpEntityCallback(request),
+                response -> {
+                    // rows are passed on while the page is received
+                    CountingInputStream body = new CountingInputStream(response.getBody());
+                    SplunkResponseParser.parseResultsPage(body, consumer);
+                    return body.getCount();
+                });
+    }
+
+    private void cancelJob(String sid, HttpHeaders headers) {
+        try {
+            MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+            params.add("action", "cancel");
+            rt.exchange(
+                    RequestEntity.post(
+                                    UriComponentsBuilder.fromHttpUrl(jobsUrl)
+                                            .pathSegment(sid, "control")
+                                            .build()
+                                            .toUri())
+                            .headers(headers)
+                            .body(params),
+                    Void.class);
+            logger.info("Cancelled search job " + sid);
+        } catch (RuntimeException e) {
+            logger.warn("Could not cancel search job " + sid + ": " + e);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package org.dpppt.additionalinfo.backend.ws.statistics;
+
+/** how a splunk search is executed */
+public enum SplunkSearchMode {
+    /** a single blocking request to the export endpoint, which streams all results */
+    EXPORT,
+    /** a search job, which is polled until it is done and whose results are fetched in pages */
+    JOB
+}
@@ -1,30 +1,40 @@
 package org.dpppt.additionalinfo.backend.ws.statistics;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
 import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import org.apache.http.client.config.RequestConfig;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.HttpClients;
 import org.dpppt.additionalinfo.backend.ws.data.HistoryDataService;
 import org.dpppt.additionalinfo.backend.ws.model.statistics.History;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.HistorySeries;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.IntColumn;
 import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+import org.dpppt.additionalinfo.backend.ws.statistics.SplunkMetrics.CountingInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.RequestEntity;
-import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
@@ -43,11 +53,36 @@ public class SplunkStatisticClient implements StatisticClient {
     private final LocalDate queryStartDate;
     private final Integer queryEndDaysBack;
     private final Integer overrideActiveAppsCount;
+    private final int incrementalDays;
+    private final Duration historyRefreshInterval;
+    // number of days before today whose seven day averages are kept in the database
+    private final int historyRetentionDays;
+    private final AtomicBoolean backfillRequested = new AtomicBoolean(false);
 
-    private final RestTemplate rt;
+    // whether the current reload is a backfill
+    private volatile boolean backfillRun = false;
 
-    private static final int CONNECT_TIMEOUT = 30_000;
-    private static final int SOCKET_TIMEOUT = 30_000;
+    private final SplunkMetrics metrics;
+    private final CloseableHttpClient httpClient;
+    // search name (e.g. positivetestcount) to execution mode, searches default to EXPORT
+    private final Map<String, SplunkSearchMode> searchModes;
+    private final SplunkSearchJobClient searchJobClient;
+    // timeout of the searches which run as search jobs, the other ones use the query timeout
+    private final Duration jobQueryTimeout;
+
+    private final HistoryColumnSource usedAuthCodeCount;
+    private final HistoryColumnSource positiveTestCount;
+    private final SevenDayAverageStage sevenDayAverage;
+    private final StatisticsPipeline pipeline;
+
+    private static final int PARALLEL_QUERIES = 4;
+
+    // names of the searches in the metrics and in the search modes
+    public static final String SEARCH_ACTIVE_APPS = "activeapps";
+    public static final String SEARCH_USED_AUTH_CODE_COUNT = "usedauthcodecount";
+    public static final String SEARCH_POSITIVE_TEST_COUNT = "positivetestcount";
+    public static final String SEARCH_COVIDCODES_ENTERED_AFTER_ONSET =
+            "covidcodesenteredafteronset";
 
     private static final Logger logger = LoggerFactory.getLogger(SplunkStatisticClient.class);
 
@@ -62,7 +97,17 @@ public class SplunkStatisticClient implements StatisticClient {
             String queryCovidCodesEnteredAfterXDaysOnsetOfSymptoms,
             LocalDate queryStartDate,
             Integer queryEndDaysBack,
-            Integer overrideActiveAppsCount) {
+            Integer overrideActiveAppsCount,
+            Duration queryTimeout,
+            Duration jobQueryTimeout,
+            int incrementalDays,
+            Duration historyRefreshInterval,
+            int historyRetentionDays,
+            CloseableHttpClient httpClient,
+            Map<String, SplunkSearchMode> searchModes,
+            SplunkSearchJobClient searchJobClient,
+            StatisticsPlausibilityFilter plausibilityFilter,
+            MeterRegistry meterRegistry) {
         this.historyDataService = historyDataService;
         this.url = splunkUrl;
         this.username = splunkUsername;
@@ -75,22 +120,78 @@ public class SplunkStatisticClient implements StatisticClient {
         this.queryStartDate = queryStartDate;
         this.queryEndDaysBack = queryEndDaysBack;
         this.overrideActiveAppsCount = overrideActiveAppsCount;
+        this.incrementalDays = incrementalDays;
+        this.historyRefreshInterval = historyRefreshInterval;
+        this.historyRetentionDays = historyRetentionDays;
+        this.jobQueryTimeout = jobQueryTimeout;
+        this.metrics = new SplunkMetrics(meterRegistry);
 
-        // Setup rest template for making http requests to Splunk. This configures a
-        // custom HTTP client with some good defaults and a custom user agent.
-        HttpClientBuilder builder =
-                HttpClients.custom()
-                        .useSystemProperties()
-                        .setUserAgent("dp3t-additional-info-backend");
-        builder.disableCookieManagement()
-                .setDefaultRequestConfig(
-                        RequestConfig.custom()
-                                .setConnectTimeout(CONNECT_TIMEOUT)
-                                .setSocketTimeout(SOCKET_TIMEOUT)
-                                .build());
-
-        CloseableHttpClient httpClient = builder.build();
-        this.rt = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+        // the http client is pooled, see SplunkHttpClientFactory
+        this.httpClient = httpClient;
+        this.searchModes = searchModes;
+        this.searchJobClient = searchJobClient;
+
+        this.usedAuthCodeCount =
+                new HistoryColumnSource(
+                        SEARCH_USED_AUTH_CODE_COUNT,
+                        "used auth code count",
+                        List.of("history.covidcodesEntered", "totalCovidcodesEntered"),
+                        usedAuthCodeCountQuery,
+                        History::getCovidcodesEntered,
+                        SplunkResult::getUsedAuthorizationCodesCount,
+                        HistorySeries::covidcodesEntered);
+        this.positiveTestCount =
+                new HistoryColumnSource(
+                        SEARCH_POSITIVE_TEST_COUNT,
+                        "positive test count",
+                        List.of(
+                                "history.newInfections",
+                                "history.newInfectionsSevenDayAverage",
+                                "newInfectionsSevenDayAvg",
+                                "newInfectionsSevenDayAvgRelPrevWeek"),
+                        positiveTestCountQuery,
+                        History::getNewInfections,
+                        SplunkResult::getPositiveTestCount,
+                        HistorySeries::newInfections);
+        this.sevenDayAverage =
+                new SevenDayAverageStage(historyDataService, SEARCH_POSITIVE_TEST_COUNT);
+
+        // every search is a source of its own, the searches run in parallel. The active apps are
+        // queried on every reload, all other searches only once per history refresh interval.
+        this.pipeline =
+                new StatisticsPipeline(
+                        "splunk-query",
+                        this::newStatistics,
+                        List.of(
+                                new SearchSource(
+                                        SEARCH_ACTIVE_APPS,
+                                        "active apps",
+                                        List.of("totalActiveUsers"),
+                                        Duration.ZERO,
+                                        () -> createRequestParamsForLastXDays(activeAppsQuery, 10),
+                                        this::applyActiveApps),
+                                usedAuthCodeCount,
+                                positiveTestCount,
+                                new SearchSource(
+                                        SEARCH_COVIDCODES_ENTERED_AFTER_ONSET,
+                                        "covid codes entered within 0 to 2 days for last 7 days",
+                                        List.of("covidcodesEntered0to2dPrevWeek"),
+                                        historyRefreshInterval,
+                                        this::createCovidcodesEnteredRequestParams,
+                                        this::applyCovidcodesEntered0to2dPrevWeek)),
+                        // implausible values are reverted before anything is stored
+                        List.of(
+                                sevenDayAverage,
+                                this::applyTotalCovidcodesEntered,
+                                plausibilityFilter,
+                                sevenDayAverage::store,
+                                this::storeHistory),
+                        PARALLEL_QUERIES,
+                        queryTimeout,
+                        Clock.systemDefaultZone());
+        for (String search : pipeline.getSourceNames()) {
+            metrics.registerSourceAge(search, () -> pipeline.getLoadedAt(search));
+        }
     }
 
     @Override
@@ -98,184 +199,380 @@ public class SplunkStatisticClient implements StatisticClient {
         long start = System.currentTimeMillis();
         logger.info("Loading statistics from Splunk: " + this.url);
 
+        Timer.Sample sample = metrics.start();
+        boolean backfill = backfillRequested.getAndSet(false);
+        String mode = backfill ? "backfill" : "full";
+        if (!backfill && !pipeline.isDue(positiveTestCount)) {
+            // the history of the last reload is reused, only the active apps are queried
+            mode = "activeapps";
+        }
+        backfillRun = backfill;
+        try {
+            Statistics statistics = pipeline.run(backfill);
+            long end = System.currentTimeMillis();
+            if (statistics.getStaleFields().isEmpty()) {
+                metrics.reloaded(mode, sample, "success");
+                logger.info("Statistics loaded from Spunk in: " + (end - start) + " [ms]");
+            } else {
+                // the failed searches are due and queried again by the next reload
+                metrics.reloaded(mode, sample, "partial");
+                logger.warn(
+                        "Statistics partially loaded from Splunk in: "
+                                + (end - start)
+                                + " [ms], stale fields: "
+                                + statistics.getStaleFields());
+                if (backfill) {
+                    backfillRequested.set(true);
+                }
+            }
+            return statistics;
+        } catch (RuntimeException e) {
+            logger.error("Could not load statistics from Splunk: " + e);
+            metrics.reloaded(mode, sample, "failure");
+            if (backfill) {
+                backfillRequested.set(true);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void requestBackfill() {
+        backfillRequested.set(true);
+    }
+
+    @Override
+    public void invalidateCaches() {
+        historyDataService.invalidateCache();
+    }
+
+    /**
+     * restores the history and all values derived from it from the database. The values which are
+     * not derived from the history (active users, covidcodes entered within 0 to 2 days) are not
+     * persisted and remain empty until the first reload.
+     */
+    @Override
+    public Statistics getStoredStatistics() {
         Statistics statistics = new Statistics();
         LocalDate today = LocalDate.now();
-        statistics.setLastUpdated(today);
         fillDays(today, statistics);
-
+        List<History> storedDays =
+                historyDataService.findDailyHistory(
+                        queryStartDate, today.minusDays(queryEndDaysBack));
+        if (storedDays.isEmpty()) {
+            return null;
+        }
+        HistorySeries history = statistics.getHistory();
+        for (History storedDay : storedDays) {
+            history.set(storedDay);
+        }
+        // the history ends queryEndDaysBack days before the day it was loaded
+        statistics.setLastUpdated(
+                storedDays.get(storedDays.size() - 1).getDate().plusDays(queryEndDaysBack));
+        statistics.setTotalCovidcodesEntered((int) history.covidcodesEntered().sum());
         try {
-            loadActiveApps(statistics);
-            loadUsedAuthCodeCount(statistics);
-            loadPositiveTestCount(statistics);
-            loadCovidcodesEntered0to2dPrevWeek(statistics);
-        } catch (Exception e) {
-            logger.error("Could not load statistics from Splunk: " + e);
-            throw new RuntimeException(e);
+            sevenDayAverage.apply(statistics, Set.of());
+        } catch (RuntimeException e) {
+            logger.warn("Could not restore seven day average: " + e);
         }
-
-        long end = System.currentTimeMillis();
-        logger.info("Statistics loaded from Spunk in: " + (end - start) + " [ms]");
+        logger.info("Restored statistics history from database: " + storedDays.size() + " days");
         return statistics;
     }
 
+    /** stops the query threads and closes the http client, running searches are interrupted */
+    public void shutdown() {
+        pipeline.shutdown();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.warn("Could not close splunk http client: " + e);
+        }
+    }
+
     private void fillDays(LocalDate today, Statistics statistics) {
-        LocalDate dayDate = queryStartDate;
         LocalDate endDate = today.minusDays(queryEndDaysBack);
-        logger.info("Setup statistics result history. Start: " + dayDate + " End: " + endDate);
-        while (dayDate.isBefore(endDate)) {
-            History history = new History();
-            history.setDate(dayDate);
-            statistics.getHistory().add(history);
-            dayDate = dayDate.plusDays(1);
+        logger.info(
+                "Setup statistics result history. Start: " + queryStartDate + " End: " + endDate);
+        int days = (int) Math.max(0, ChronoUnit.DAYS.between(queryStartDate, endDate));
+        statistics.setHistory(new HistorySeries(queryStartDate, days));
+    }
+
+    /** creates the statistics of a reload, before the results of the searches are merged */
+    private Statistics newStatistics() {
+        LocalDate today = LocalDate.now();
+        Statistics statistics = new Statistics();
+        statistics.setLastUpdated(today);
+        fillDays(today, statistics);
+        return statistics;
+    }
+
+    /**
+     * Loads the daily values of all days before the incremental window from the database, as these
+     * values do not change anymore. Only the days within the incremental window have to be queried
+     * from Splunk. If a backfill is requested, nothing is loaded and the full history has to be
+     * queried. If a day is missing in the stored history, e.g. because Splunk did not return it
+     * while it was within the incremental window, only the days before it are loaded and the
+     * history is queried from that day on.
+     *
+     * @param today
+     * @param storedValue the value of the column in the stored history
+     * @param values the loaded values, by day
+     * @return the first day which has to be queried from Splunk
+     */
+    private LocalDate loadFinalizedDays(
+            LocalDate today,
+            Function<History, Integer> storedValue,
+            Map<LocalDate, Integer> values) {
+        LocalDate incrementalStartDate = today.minusDays(queryEndDaysBack + incrementalDays);
+        if (backfillRun || !incrementalStartDate.isAfter(queryStartDate)) {
+            logger.info("Load full history from Splunk");
+            return queryStartDate;
         }
+        List<History> finalizedDays =
+                historyDataService.findDailyHistory(queryStartDate, incrementalStartDate);
+        // the stored days are ordered, the first gap ends the finalized days
+        LocalDate firstMissingDay = queryStartDate;
+        for (History finalizedDay : finalizedDays) {
+            if (!finalizedDay.getDate().equals(firstMissingDay)) {
+                break;
+            }
+            values.put(finalizedDay.getDate(), storedValue.apply(finalizedDay));
+            firstMissingDay = firstMissingDay.plusDays(1);
+        }
+        if (firstMissingDay.equals(queryStartDate)) {
+            logger.info("Stored history is empty. Load full history from Splunk");
+        } else if (firstMissingDay.isBefore(incrementalStartDate)) {
+            logger.info("Stored history is incomplete. Load history from the first missing day");
+        }
+        logger.info("Load history from Splunk starting at: " + firstMissingDay);
+        return firstMissingDay;
     }
 
-    private void loadCovidcodesEntered0to2dPrevWeek(Statistics statistics) throws Exception {
-        logger.info("Loading covid codes entered within 0 to 2 days for last 7 days");
-        RequestEntity<MultiValueMap<String, String>> request =
-                RequestEntity.post(new URI(url))
-                        .accept(MediaType.APPLICATION_JSON)
-                        .headers(createHeaders())
-                        .body(
-                                createRequestParamsForLastXDays(
-                                        queryCovidCodesEnteredAfterXDaysOnsetOfSymptoms, 7));
-        logger.debug("Request entity: " + request.toString());
-        ResponseEntity<String> response = rt.exchange(request, String.class);
-        logger.info("Result: Status: " + response.getStatusCode() + " Body: " + response.getBody());
-        if (response.getStatusCode() == HttpStatus.OK) {
-            List<SplunkResult> resultList = extractResultFromSplunkApiString(response.getBody());
-            if (!resultList.isEmpty()) {
-                int within0To2Days = 0;
-                int total = 0;
-                for (SplunkResult splunkResult : resultList) {
-                    within0To2Days +=
-                            splunkResult.getAfterZeroDays()
-                                    + splunkResult.getAfterOneDays()
-                                    + splunkResult.getAfterTwoDays();
-                    total += splunkResult.getTotal();
-                }
-                if (total == 0) {
-                    statistics.setCovidcodesEntered0to2dPrevWeek(1.0);
-                } else {
-                    statistics.setCovidcodesEntered0to2dPrevWeek(within0To2Days / (double) total);
-                }
+    /**
+     * stores the daily history once one of its columns was reloaded and both columns have results,
+     * and on a backfill of both columns also the missing seven day averages. The column which was
+     * not reloaded keeps the values of its last load.
+     */
+    private void storeHistory(Statistics statistics, Set<String> refreshedSources) {
+        LocalDate usedAuthCodeCountFrom = usedAuthCodeCount.queriedFrom;
+        LocalDate positiveTestCountFrom = positiveTestCount.queriedFrom;
+        boolean usedAuthCodeCountRefreshed = refreshedSources.contains(SEARCH_USED_AUTH_CODE_COUNT);
+        boolean positiveTestCountRefreshed = refreshedSources.contains(SEARCH_POSITIVE_TEST_COUNT);
+        if (!(usedAuthCodeCountRefreshed || positiveTestCountRefreshed)
+                || StatisticsPlausibilityFilter.isHistoryRejected(statistics)
+                || usedAuthCodeCountFrom == null
+                || positiveTestCountFrom == null) {
+            return;
+        }
+        storeDailyHistory(
+                statistics,
+                usedAuthCodeCountFrom.isBefore(positiveTestCountFrom)
+                        ? usedAuthCodeCountFrom
+                        : positiveTestCountFrom);
+        if (backfillRun && usedAuthCodeCountRefreshed && positiveTestCountRefreshed) {
+            storeMissingSevenDayAverages(statistics);
+        }
+    }
+
+    /**
+     * stores the daily values of all days which were queried from Splunk, together with the seven
+     * day averages which depend on them. Days within the incremental window are overwritten on
+     * every reload until they leave the window. Days which Splunk did not return for both columns
+     * are not stored, so that they are queried again once they left the window (see {@link
+     * #loadFinalizedDays(LocalDate, Function, Map)}).
+     *
+     * @param statistics
+     * @param historyQueryStartDate
+     */
+    private void storeDailyHistory(Statistics statistics, LocalDate historyQueryStartDate) {
+        HistorySeries history = statistics.getHistory();
+        int queriedFrom = history.indexOf(historyQueryStartDate);
+        // the centered seven day average reaches three days into the queried days
+        int storeFrom = Math.max(0, queriedFrom - 3);
+        Set<LocalDate> usedAuthCodeCountDays = usedAuthCodeCount.loadedDays;
+        Set<LocalDate> positiveTestCountDays = positiveTestCount.loadedDays;
+        List<History> loadedDays = new ArrayList<>();
+        for (History day : history.toHistory(storeFrom, history.size())) {
+            if (usedAuthCodeCountDays.contains(day.getDate())
+                    && positiveTestCountDays.contains(day.getDate())) {
+                loadedDays.add(day);
             }
         }
-        logger.info("Covid codes entered within 0 to 2 days for last 7 days loaded");
+        historyDataService.upsertDailyHistory(loadedDays);
     }
 
-    private void loadActiveApps(Statistics statistics) throws Exception {
-        logger.info("Loading active apps");
-        RequestEntity<MultiValueMap<String, String>> request =
-                RequestEntity.post(new URI(url))
-                        .accept(MediaType.APPLICATION_JSON)
-                        .headers(createHeaders())
-                        .body(createRequestParamsForLastXDays(activeAppsQuery, 10));
-        logger.debug("Request entity: " + request.toString());
-        ResponseEntity<String> response = rt.exchange(request, String.class);
-        logger.info("Result: Status: " + response.getStatusCode() + " Body: " + response.getBody());
-        if (response.getStatusCode() == HttpStatus.OK) {
-            List<SplunkResult> resultList = extractResultFromSplunkApiString(response.getBody());
-            if (!resultList.isEmpty()) {
-                // get latest result
-                Optional<SplunkResult> latestCount =
-                        resultList.stream().filter(r -> r.getActiveApps() != null).findFirst();
-                if (latestCount.isPresent()) {
-                    statistics.setTotalActiveUsers(latestCount.get().getActiveApps());
-                } else {
-                    statistics.setTotalActiveUsers(null);
-                }
+    /**
+     * stores the current seven day averages of all days which have no stored latest seven day
+     * average yet, e.g. because the service was not running on that day. Without them, the
+     * comparison with the previous week has to fall back to the current averages anyway. Stored
+     * averages are kept, as they are the values which were published on that day. Only days
+     * within the retention period are considered, older averages are removed every night.
+     *
+     * @param statistics
+     */
+    private void storeMissingSevenDayAverages(Statistics statistics) {
+        HistorySeries history = statistics.getHistory();
+        LocalDate retentionStart = LocalDate.now().minusDays(historyRetentionDays);
+        LocalDate from =
+                history.getStartDate().isBefore(retentionStart)
+                        ? retentionStart
+                        : history.getStartDate();
+        int fromIndex = history.indexOf(from);
+        if (fromIndex < 0) {
+            return;
+        }
+        Map<LocalDate, Integer> storedAverages =
+                historyDataService.findLatestSevenDayAvgs(from, history.getEndDate());
+        IntColumn sevenDayAverages = history.newInfectionsSevenDayAverage();
+        Map<LocalDate, Integer> missingAverages = new LinkedHashMap<>();
+        for (int i = fromIndex; i < sevenDayAverages.size(); i++) {
+            LocalDate day = history.getDate(i);
+            if (sevenDayAverages.isPresent(i) && !storedAverages.containsKey(day)) {
+                missingAverages.put(day, sevenDayAverages.get(i));
             }
         }
-        if (overrideActiveAppsCount != null) {
-            logger.info(
-                    "Override active app count. From query: "
-                            + statistics.getTotalActiveUsers()
-                            + " override with: "
-                            + overrideActiveAppsCount);
-            statistics.setTotalActiveUsers(overrideActiveAppsCount);
+        if (!missingAverages.isEmpty()) {
+            historyDataService.upsertLatestSevenDayAvgs(missingAverages);
+            logger.info("Stored missing seven day averages: " + missingAverages.size() + " days");
         }
-        logger.info("Active apps loaded");
     }
 
-    private void loadUsedAuthCodeCount(Statistics statistics) throws Exception {
-        logger.info("Loading used auth code count");
-        RequestEntity<MultiValueMap<String, String>> request =
-                RequestEntity.post(new URI(url))
-                        .accept(MediaType.APPLICATION_JSON)
-                        .headers(createHeaders())
-                        .body(createRequestParams(usedAuthCodeCountQuery));
-        logger.debug("Request entity: " + request.toString());
-        ResponseEntity<String> response = rt.exchange(request, String.class);
-        logger.info("Result: Status: " + response.getStatusCode() + " Body: " + response.getBody());
-        if (response.getStatusCode() == HttpStatus.OK) {
-            List<SplunkResult> resultList = extractResultFromSplunkApiString(response.getBody());
-            int totalCovidcodesEntered = 0;
-            for (SplunkResult r : resultList) {
-                for (History h : statistics.getHistory()) {
-                    if (h.getDate().isEqual(r.getTime().toLocalDate())) {
-                        h.setCovidcodesEntered(r.getUsedAuthorizationCodesCount());
-                    }
-                }
-                totalCovidcodesEntered += r.getUsedAuthorizationCodesCount();
-            }
-            statistics.setTotalCovidcodesEntered(totalCovidcodesEntered);
+    /**
+     * runs a search and parses its results
+     *
+     * @param name used for logging
+     * @param search used to tag the metrics
+     * @param params
+     * @param rt the rest template of the source, used by the export endpoint
+     * @return the results or null if splunk did not respond with 200 OK
+     * @throws Exception
+     */
+    private List<SplunkResult> query(
+            String name,
+            String search,
+            MultiValueMap<String, String> params,
+            AbortableRestTemplate rt)
+            throws Exception {
+        logger.info("Loading " + name);
+        Timer.Sample sample = metrics.start();
+        List<SplunkResult> resultList;
+        try {
+            resultList =
+                    searchModes.getOrDefault(search, SplunkSearchMode.EXPORT)
+                                    == SplunkSearchMode.JOB
+                            ? queryJob(search, sample, params)
+                            : queryExport(rt, search, sample, params);
+        } catch (Exception e) {
+            metrics.searchFailed(search, sample, SplunkMetrics.causeOf(e));
+            throw e;
+        }
+        if (resultList == null) {
+            metrics.searchFailed(search, sample, "status");
         }
-        logger.info("Used auth code count loaded");
+        logger.info(
+                name
+                        + " loaded: "
+                        + (resultList != null ? resultList.size() + " results" : "no results"));
+        return resultList;
     }
 
-    private void loadPositiveTestCount(Statistics statistics) throws Exception {
-        logger.info("Loading positive test count");
+    /** runs a search with a single request to the export endpoint */
+    private List<SplunkResult> queryExport(
+            RestTemplate rt,
+            String search,
+            Timer.Sample sample,
+            MultiValueMap<String, String> params)
+            throws Exception {
         RequestEntity<MultiValueMap<String, String>> request =
                 RequestEntity.post(new URI(url))
                         .accept(MediaType.APPLICATION_JSON)
                         .headers(createHeaders())
-                        .body(createRequestParams(positiveTestCountQuery));
+                        .body(params);
         logger.debug("Request entity: " + request.toString());
-        ResponseEntity<String> response = rt.exchange(request, String.class);
-        logger.info("Result: Status: " + response.getStatusCode() + " Body: " + response.getBody());
-        if (response.getStatusCode() == HttpStatus.OK) {
-            List<SplunkResult> resultList = extractResultFromSplunkApiString(response.getBody());
-            for (SplunkResult r : resultList) {
-                for (History h : statistics.getHistory()) {
-                    if (h.getDate().isEqual(r.getTime().toLocalDate())) {
-                        h.setNewInfections(r.getPositiveTestCount());
+        return rt.execute(
+                request.getUrl(),
+                request.getMethod(),
+                rt.httpEntityCallback(request),
+                response -> {
+                    logger.info("Result: Status: " + response.getStatusCode());
+                    if (response.getStatusCode() != HttpStatus.OK) {
+                        return null;
                     }
-                }
+                    // parse the body while it is received instead of buffering it
+                    CountingInputStream body = new CountingInputStream(response.getBody());
+                    List<SplunkResult> results = new ArrayList<>();
+                    int droppedPreviewResults = SplunkResponseParser.parse(body, results::add);
+                    metrics.searchSucceeded(
+                            search, sample, body.getCount(), results.size(), droppedPreviewResults);
+                    SplunkResponseParser.sortDescendingByTime(results);
+                    return results;
+                });
+    }
+
+    /** runs a search as a search job, see {@link SplunkSearchJobClient} */
+    private List<SplunkResult> queryJob(
+            String search, Timer.Sample sample, MultiValueMap<String, String> params)
+            throws Exception {
+        List<SplunkResult> results = new ArrayList<>();
+        long receivedBytes = searchJobClient.search(params, createHeaders(), results::add);
+        // the results of a finished job contain no preview results
+        metrics.searchSucceeded(search, sample, receivedBytes, results.size(), 0);
+        SplunkResponseParser.sortDescendingByTime(results);
+        return results;
+    }
+
+    private void applyCovidcodesEntered0to2dPrevWeek(
+            Statistics statistics, List<SplunkResult> resultList) {
+        if (resultList != null && !resultList.isEmpty()) {
+            int within0To2Days = 0;
+            int total = 0;
+            for (SplunkResult splunkResult : resultList) {
+                within0To2Days +=
+                        splunkResult.getAfterZeroDays()
+                                + splunkResult.getAfterOneDays()
+                                + splunkResult.getAfterTwoDays();
+                total += splunkResult.getTotal();
+            }
+            if (total == 0) {
+                statistics.setCovidcodesEntered0to2dPrevWeek(1.0);
+            } else {
+                statistics.setCovidcodesEntered0to2dPrevWeek(within0To2Days / (double) total);
             }
         }
-        StatisticHelper.calculateRollingAverage(statistics);
-
-        Integer latestSevenDayAverage = null;
-        Integer prevWeekSevenDayAverage = null;
-        for (int i = statistics.getHistory().size() - 1; i > 0; i--) {
-            latestSevenDayAverage =
-                    statistics.getHistory().get(i).getNewInfectionsSevenDayAverage();
-            if (latestSevenDayAverage != null) {
-                LocalDate day = statistics.getHistory().get(i).getDate();
-                historyDataService.upsertLatestSevenDayAvgForDay(latestSevenDayAverage, day);
-                prevWeekSevenDayAverage =
-                        historyDataService.findLatestSevenDayAvgForDay(day.minusDays(7));
-                if (prevWeekSevenDayAverage == null) {
-                    logger.warn(
-                            "no seven day avg history for {}. using current data as fallback", day);
-                    prevWeekSevenDayAverage =
-                            statistics.getHistory().get(i - 7).getNewInfectionsSevenDayAverage();
-                }
-                break;
+    }
+
+    private void applyActiveApps(Statistics statistics, List<SplunkResult> resultList) {
+        if (resultList != null && !resultList.isEmpty()) {
+            // get latest result
+            Optional<SplunkResult> latestCount =
+                    resultList.stream().filter(r -> r.getActiveApps() != null).findFirst();
+            if (latestCount.isPresent()) {
+                statistics.setTotalActiveUsers(latestCount.get().getActiveApps());
+            } else {
+                statistics.setTotalActiveUsers(null);
             }
         }
-        statistics.setNewInfectionsSevenDayAvg(latestSevenDayAverage);
-        statistics.setNewInfectionsSevenDayAvgRelPrevWeek(
-                (latestSevenDayAverage / (double) prevWeekSevenDayAverage) - 1);
+        if (overrideActiveAppsCount != null) {
+            logger.info(
+                    "Override active app count. From query: "
+                            + statistics.getTotalActiveUsers()
+                            + " override with: "
+                            + overrideActiveAppsCount);
+            statistics.setTotalActiveUsers(overrideActiveAppsCount);
+        }
+    }
 
-        logger.info("Positive test count loaded");
+    private void applyTotalCovidcodesEntered(
+            Statistics statistics, Set<String> refreshedSources) {
+        // the results may only contain the most recent days, so sum up the whole history
+        statistics.setTotalCovidcodesEntered(
+                (int) statistics.getHistory().covidcodesEntered().sum());
     }
 
-    private MultiValueMap<String, String> createRequestParams(String query) {
+    private MultiValueMap<String, String> createRequestParams(String query, LocalDate startDate) {
         MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
         params.add("search", query);
-        long daysBack = ChronoUnit.DAYS.between(queryStartDate, LocalDate.now());
+        long daysBack = ChronoUnit.DAYS.between(startDate, LocalDate.now());
         params.add("earliest_time", "-" + daysBack + "d@d");
         params.add("latest_time", "-" + queryEndDaysBack + "d@d");
         params.add("output_mode", "json");
@@ -299,35 +596,207 @@ public class SplunkStatisticClient implements StatisticClient {
         return params;
     }
 
+    private MultiValueMap<String, String> createCovidcodesEnteredRequestParams() {
+        return createRequestParamsForLastXDays(queryCovidCodesEnteredAfterXDaysOnsetOfSymptoms, 7);
+    }
+
     private HttpHeaders createHeaders() {
         HttpHeaders headers = new HttpHeaders();
         headers.setBasicAuth(username, password);
         return headers;
     }
 
+    /** returns the timeout of the given search or null to use the query timeout */
+    private Duration searchTimeout(String search) {
+        return searchModes.getOrDefault(search, SplunkSearchMode.EXPORT) == SplunkSearchMode.JOB
+                ? jobQueryTimeout
+                : null;
+    }
+
+    /** a search whose results are merged into the statistics as they are */
+    private class SearchSource implements MetricSource {
+        private final String search;
+        private final String description;
+        private final AbortableRestTemplate rt = new AbortableRestTemplate(httpClient);
+        private final List<String> fields;
+        private final Duration refreshInterval;
+        private final Supplier<MultiValueMap<String, String>> params;
+        private final BiConsumer<Statistics, List<SplunkResult>> merge;
+
+        private SearchSource(
+                String search,
+                String description,
+                List<String> fields,
+                Duration refreshInterval,
+                Supplier<MultiValueMap<String, String>> params,
+                BiConsumer<Statistics, List<SplunkResult>> merge) {
+            this.search = search;
+            this.description = description;
+            this.fields = fields;
+            this.refreshInterval = refreshInterval;
+            this.params = params;
+            this.merge = merge;
+        }
+
+        @Override
+        public String getName() {
+            return search;
+        }
+
+        @Override
+        public Duration getRefreshInterval() {
+            return refreshInterval;
+        }
+
+        @Override
+        public Duration getTimeout() {
+            return searchTimeout(search);
+        }
+
+        @Override
+        public void cancel() {
+            rt.abort();
+        }
+
+        @Override
+        public List<String> getFields() {
+            return fields;
+        }
+
+        @Override
+        public MetricResult load() throws Exception {
+            List<SplunkResult> results = query(description, search, params.get(), rt);
+            return statistics -> merge.accept(statistics, results);
+        }
+    }
+
     /**
-     * Reads the response from the splunk api (not fully valid json, but single json objects, line
-     * by line) and returns a list of {@link SplunkResult} in descending order by time.
-     *
-     * @param splunkApiResponse
-     * @return
-     * @throws JsonMappingException
-     * @throws JsonProcessingException
+     * a column of the daily history. The finalized days are loaded from the database, only the
+     * days within the incremental window are queried (see {@link #loadFinalizedDays(LocalDate,
+     * Function, Map)}).
      */
-    private List<SplunkResult> extractResultFromSplunkApiString(String splunkApiResponse)
-            throws JsonMappingException, JsonProcessingException {
-        String sanitizedSplunkApiStrint = splunkApiResponse.replaceAll("\"NO_DATA\"", "null");
-        ObjectMapper om = new ObjectMapper();
-        List<SplunkResult> results = new ArrayList<>();
-        String[] lines = sanitizedSplunkApiStrint.split("\\n");
-        for (String line : lines) {
-            SplunkResponse response = om.readValue(line, SplunkResponse.class);
-            if (!Boolean.TRUE.equals(response.getPreview())) {
-                results.add(response.getResult());
+    private class HistoryColumnSource implements MetricSource {
+        private final String search;
+        private final String description;
+        private final AbortableRestTemplate rt = new AbortableRestTemplate(httpClient);
+        private final List<String> fields;
+        private final String query;
+        private final Function<History, Integer> storedValue;
+        private final Function<SplunkResult, Integer> resultValue;
+        private final Function<HistorySeries, IntColumn> column;
+        // the first day queried by the last successful load, null if splunk returned no results
+        private volatile LocalDate queriedFrom;
+        // the days with a value (possibly null) from the database or from splunk in the last load
+        private volatile Set<LocalDate> loadedDays = Set.of();
+
+        private HistoryColumnSource(
+                String search,
+                String description,
+                List<String> fields,
+                String query,
+                Function<History, Integer> storedValue,
+                Function<SplunkResult, Integer> resultValue,
+                Function<HistorySeries, IntColumn> column) {
+            this.search = search;
+            this.description = description;
+            this.fields = fields;
+            this.query = query;
+            this.storedValue = storedValue;
+            this.resultValue = resultValue;
+            this.column = column;
+        }
+
+        @Override
+        public String getName() {
+            return search;
+        }
+
+        @Override
+        public Duration getRefreshInterval() {
+            return historyRefreshInterval;
+        }
+
+        @Override
+        public Duration getTimeout() {
+            return searchTimeout(search);
+        }
+
+        @Override
+        public void cancel() {
+            rt.abort();
+        }
+
+        @Override
+        public List<String> getFields() {
+            return fields;
+        }
+
+        @Override
+        public MetricResult load() throws Exception {
+            Map<LocalDate, Integer> values = new HashMap<>();
+            LocalDate from = loadFinalizedDays(LocalDate.now(), storedValue, values);
+            List<SplunkResult> results =
+                    query(description, search, createRequestParams(query, from), rt);
+            if (results == null) {
+                queriedFrom = null;
+                loadedDays = Set.of();
+                return MetricResult.EMPTY;
+            }
+            for (SplunkResult result : results) {
+                values.put(result.getTime().toLocalDate(), resultValue.apply(result));
+            }
+            queriedFrom = from;
+            loadedDays = Set.copyOf(values.keySet());
+            return statistics -> {
+                HistorySeries history = statistics.getHistory();
+                IntColumn target = column.apply(history);
+                values.forEach(
+                        (day, value) -> {
+                            int index = history.indexOf(day);
+                            if (index >= 0) {
+                                target.set(index, value);
+                            }
+                        });
+            };
+        }
+    }
+
+    /**
+     * rest template of a single source which keeps its running request. An interrupt does not stop
+     * a blocking read of the response, aborting the request does.
+     */
+    private static class AbortableRestTemplate extends RestTemplate {
+        private final AtomicReference<HttpUriRequest> running;
+
+        private AbortableRestTemplate(CloseableHttpClient httpClient) {
+            this(httpClient, new AtomicReference<>());
+        }
+
+        private AbortableRestTemplate(
+                CloseableHttpClient httpClient, AtomicReference<HttpUriRequest> running) {
+            super(
+                    new HttpComponentsClientHttpRequestFactory(httpClient) {
+                        @Override
+                        protected HttpUriRequest createHttpUriRequest(
+                                HttpMethod httpMethod, URI uri) {
+                            HttpUriRequest request = super.createHttpUriRequest(httpMethod, uri);
+                            running.set(request);
+                            // the load was cancelled before the request existed
+                            if (Thread.currentThread().isInterrupted()) {
+                                request.abort();
+                            }
+                            return request;
+                        }
+                    });
+            this.running = running;
+        }
+
+        /** aborts the running request, if any */
+        private void abort() {
+            HttpUriRequest request = running.get();
+            if (request != null) {
+                request.abort();
             }
         }
-        Collections.sort(
-                results, Collections.reverseOrder(Comparator.comparing(SplunkResult::getTime)));
-        return results;
     }
 }
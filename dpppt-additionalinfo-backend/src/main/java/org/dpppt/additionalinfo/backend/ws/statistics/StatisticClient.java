@@ -4,4 +4,26 @@ import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
 
 public interface StatisticClient {
     public Statistics getStatistics();
+
+    /**
+     * requests that the next call to {@link #getStatistics()} reloads the full history instead of
+     * only the most recent days
+     */
+    public default void requestBackfill() {}
+
+    /**
+     * called before the first call to {@link #getStatistics()} after another instance reloaded the
+     * statistics, which may have changed the persisted values cached by this client
+     */
+    public default void invalidateCaches() {}
+
+    /**
+     * returns the statistics as far as they can be restored from the persisted history, without
+     * querying the source. Used to serve statistics right after startup.
+     *
+     * @return the restored statistics or null if nothing is persisted
+     */
+    public default Statistics getStoredStatistics() {
+        return null;
+    }
 }
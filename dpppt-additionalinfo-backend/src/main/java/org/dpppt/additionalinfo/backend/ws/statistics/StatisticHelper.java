@@ -1,40 +1,29 @@
 package org.dpppt.additionalinfo.backend.ws.statistics;
 
+import org.dpppt.additionalinfo.backend.ws.model.statistics.HistorySeries;
 import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+import org.dpppt.additionalinfo.backend.ws.statistics.RollingAggregate.Alignment;
 
 public class StatisticHelper {
 
+    private static final RollingAggregate SEVEN_DAY_AVERAGE =
+            new RollingAggregate(7, Alignment.CENTERED);
+
+    /** computes the centered 7 day average of the new infections */
     public static void calculateRollingAverage(Statistics statistics) {
-        // compute 7 day average
-        int window = 7;
-        // find first and last entry with values
-        Integer first = null;
-        Integer last = null;
-        for (int i = 0; i < statistics.getHistory().size(); i++) {
-            if (statistics.getHistory().get(i).getNewInfections() != null) {
-                if (first == null || i < first) {
-                    first = i;
-                }
-                if (last == null || i > last) {
-                    last = i;
-                }
-            }
-        }
-        for (int i = first + 3; i <= last - 3; i++) {
-            int sumInWindow = 0;
-            int numElements = 0;
-            for (int j = 0; j < window; j++) {
-                Integer newInfectionsForDay =
-                        statistics.getHistory().get(i - 3 + j).getNewInfections();
-                if (newInfectionsForDay != null) {
-                    sumInWindow += newInfectionsForDay;
-                    numElements++;
-                }
-            }
-            statistics
-                    .getHistory()
-                    .get(i)
-                    .setNewInfectionsSevenDayAverage(sumInWindow / numElements);
-        }
+        calculateRollingAverage(statistics, SEVEN_DAY_AVERAGE);
+    }
+
+    /**
+     * computes the rolling average of the new infections with the given window and stores it as
+     * the seven day average. Days without a complete window have no average.
+     *
+     * @param statistics
+     * @param rollingAverage
+     */
+    public static void calculateRollingAverage(
+            Statistics statistics, RollingAggregate rollingAverage) {
+        HistorySeries history = statistics.getHistory();
+        rollingAverage.mean(history.newInfections(), history.newInfectionsSevenDayAverage());
     }
 }
@@ -0,0 +1,291 @@
+package org.dpppt.additionalinfo.backend.ws.statistics;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds the statistics in stages:
+ *
+ * <ol>
+ *   <li>sources: every {@link MetricSource} which is due is loaded, all of them concurrently
+ *   <li>merge: the latest results of all sources are merged into the base statistics, in the
+ *       order of the sources
+ *   <li>derived metrics: the {@link DerivedMetricStage}s compute the values which depend on the
+ *       merged statistics
+ * </ol>
+ *
+ * The statistics are then published by the caller. Sources which are not due are not loaded, their
+ * last result is merged again. The same holds for a source which fails or does not finish within
+ * the timeout: its last good result is merged and its fields are marked as stale (see {@link
+ * Statistics#getStaleFields()}), while the new results of all other sources are kept. The source
+ * stays due, so it is loaded again by the next run. A run only fails if a source has no result at
+ * all. The timeout of a source starts once its load is running, a load which does not finish
+ * within it is cancelled (see {@link MetricSource#cancel()}).
+ */
+public class StatisticsPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatisticsPipeline.class);
+
+    // runs are not exactly one refresh interval apart
+    private static final Duration REFRESH_TOLERANCE = Duration.ofMinutes(1);
+
+    private final Supplier<Statistics> base;
+    private final List<MetricSource> sources;
+    private final List<DerivedMetricStage> derivedStages;
+    private final Duration timeout;
+    private final Clock clock;
+    private final ExecutorService executor;
+
+    private final Map<String, LoadedResult> results = new ConcurrentHashMap<>();
+    // sources whose last result was not seen by the derived stages yet, e.g. because another source
+    // of the run had no result. The derived stages of the next run treat them as refreshed.
+    private final Set<String> underivedSources = new LinkedHashSet<>();
+
+    /**
+     * @param name used for the names of the source threads
+     * @param base creates the statistics of a run, before the results are merged
+     * @param sources
+     * @param derivedStages
+     * @param parallelism maximal number of sources which are loaded at the same time
+     * @param timeout maximal duration of loading a source, counted from the start of the load,
+     *     unless the source has a timeout of its own (see {@link MetricSource#getTimeout()})
+     * @param clock
+     */
+    public StatisticsPipeline(
+            String name,
+            Supplier<Statistics> base,
+            List<MetricSource> sources,
+            List<DerivedMetricStage> derivedStages,
+            int parallelism,
+            Duration timeout,
+            Clock clock) {
+        this.base = base;
+        this.sources = List.copyOf(sources);
+        this.derivedStages = List.copyOf(derivedStages);
+        this.timeout = timeout;
+        this.clock = clock;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor =
+                Executors.newFixedThreadPool(
+                        parallelism,
+                        runnable -> {
+                            Thread thread =
+                                    new Thread(
+                                            runnable, name + "-" + threadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+    }
+
+    /**
+     * loads all sources which are due, merges the results and computes the derived metrics
+     *
+     * @param refreshAll load all sources, whether they are due or not
+     * @return
+     * @throws RuntimeException if a source could not be loaded and has no earlier result
+     */
+    public synchronized Statistics run(boolean refreshAll) {
+        Instant now = clock.instant();
+        Map<String, Load> loads = new LinkedHashMap<>();
+        long submitted = System.nanoTime();
+        for (MetricSource source : sources) {
+            if (refreshAll || isDue(source, now)) {
+                Load load = new Load(source);
+                load.future = executor.submit(load);
+                loads.put(source.getName(), load);
+            }
+        }
+
+        Map<String, Exception> failures = new LinkedHashMap<>();
+        for (Load load : loads.values()) {
+            String name = load.source.getName();
+            try {
+                MetricResult result = load.await(submitted, timeout);
+                results.put(
+                        name, new LoadedResult(result != null ? result : MetricResult.EMPTY, now));
+                underivedSources.add(name);
+            } catch (Exception e) {
+                // a slow source must not keep its thread busy for the next run
+                load.cancel();
+                failures.put(name, e);
+            }
+        }
+        Set<String> loadedSources = new LinkedHashSet<>(loads.keySet());
+        loadedSources.removeAll(failures.keySet());
+        logger.info("Loaded sources: " + loadedSources);
+
+        Map<String, Instant> staleFields = new LinkedHashMap<>();
+        RuntimeException missingResults = null;
+        for (Map.Entry<String, Exception> failure : failures.entrySet()) {
+            LoadedResult lastResult = results.get(failure.getKey());
+            if (lastResult == null) {
+                logger.error(
+                        "Could not load source " + failure.getKey() + ", no earlier result",
+                        failure.getValue());
+                if (missingResults == null) {
+                    missingResults =
+                            new RuntimeException(
+                                    "No result for source " + failure.getKey(),
+                                    failure.getValue());
+                } else {
+                    missingResults.addSuppressed(failure.getValue());
+                }
+                continue;
+            }
+            logger.warn(
+                    "Could not load source "
+                            + failure.getKey()
+                            + ", reuse result from "
+                            + lastResult.loadedAt
+                            + ": "
+                            + failure.getValue());
+            for (String field : source(failure.getKey()).getFields()) {
+                staleFields.put(field, lastResult.loadedAt);
+            }
+        }
+        if (missingResults != null) {
+            // the results of the other sources are kept, the next run only loads the missing ones
+            // and passes the kept ones to the derived stages
+            throw missingResults;
+        }
+
+        Statistics statistics = base.get();
+        for (MetricSource source : sources) {
+            LoadedResult result = results.get(source.getName());
+            if (result != null) {
+                result.result.mergeInto(statistics);
+            }
+        }
+        Set<String> refreshed = Set.copyOf(underivedSources);
+        for (DerivedMetricStage stage : derivedStages) {
+            stage.apply(statistics, refreshed);
+        }
+        underivedSources.clear();
+        statistics.setStaleFields(staleFields);
+        return statistics;
+    }
+
+    /**
+     * returns when the last result of the source was loaded
+     *
+     * @param sourceName
+     * @return the load time or null if the source was not loaded yet
+     */
+    public Instant getLoadedAt(String sourceName) {
+        LoadedResult result = results.get(sourceName);
+        return result != null ? result.loadedAt : null;
+    }
+
+    /** returns the names of all sources, in the order in which they are merged */
+    public List<String> getSourceNames() {
+        return sources.stream().map(MetricSource::getName).collect(Collectors.toList());
+    }
+
+    /** returns true if the source has to be loaded by the next run */
+    public boolean isDue(MetricSource source) {
+        return isDue(source, clock.instant());
+    }
+
+    private boolean isDue(MetricSource source, Instant now) {
+        LoadedResult result = results.get(source.getName());
+        return result == null
+                || !LocalDate.ofInstant(result.loadedAt, clock.getZone())
+                        .equals(LocalDate.ofInstant(now, clock.getZone()))
+                || !now.isBefore(
+                        result.loadedAt
+                                .plus(source.getRefreshInterval())
+                                .minus(REFRESH_TOLERANCE));
+    }
+
+    private MetricSource source(String name) {
+        return sources.stream()
+                .filter(source -> source.getName().equals(name))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    /** stops the source threads, running loads are interrupted */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /** a load of a source, whose timeout starts once the load is running */
+    private static class Load implements Callable<MetricResult> {
+        private final MetricSource source;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private volatile long startedAt;
+        private Future<MetricResult> future;
+
+        private Load(MetricSource source) {
+            this.source = source;
+        }
+
+        @Override
+        public MetricResult call() throws Exception {
+            startedAt = System.nanoTime();
+            started.countDown();
+            return source.load();
+        }
+
+        /**
+         * @param submitted in {@link System#nanoTime()}
+         * @param defaultTimeout used unless the source has a timeout of its own
+         * @throws Exception if the load failed, did not start within the timeout while waiting for
+         *     a thread or did not finish within the timeout once started
+         */
+        private MetricResult await(long submitted, Duration defaultTimeout) throws Exception {
+            Duration sourceTimeout = source.getTimeout();
+            long timeout = (sourceTimeout != null ? sourceTimeout : defaultTimeout).toNanos();
+            if (!started.await(submitted + timeout - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                throw new TimeoutException("not started within " + Duration.ofNanos(timeout));
+            }
+            try {
+                return future.get(startedAt + timeout - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        /** interrupts the load and lets the source abort what an interrupt does not stop */
+        private void cancel() {
+            future.cancel(true);
+            source.cancel();
+        }
+    }
+
+    private static class LoadedResult {
+        private final MetricResult result;
+        private final Instant loadedAt;
+
+        private LoadedResult(MetricResult result, Instant loadedAt) {
+            this.result = result;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
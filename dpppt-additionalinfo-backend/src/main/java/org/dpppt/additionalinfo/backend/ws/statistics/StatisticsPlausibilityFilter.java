@@ -0,0 +1,160 @@
+package org.dpppt.additionalinfo.backend.ws.statistics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks new statistics against the last accepted ones. Every field whose value is rejected by
+ * one of its {@link PlausibilityRule}s keeps the accepted value. A field also keeps the accepted
+ * value if it has no value anymore (rule "missing"). The rejected fields are set as {@link
+ * Statistics#getRejectedFields()}.
+ *
+ * <p>The filter runs as a {@link DerivedMetricStage} of the {@link StatisticsPipeline}, after the
+ * derived values are computed and before anything is stored, so that rejected values are neither
+ * published nor stored. All fields are checked on every run, including the ones whose source was
+ * not reloaded, as the pipeline reuses the unchecked results. A value which was rejected before is
+ * rejected again without evaluating and counting the rules once more.
+ *
+ * <p>Every rule runs at most once and takes at most one pass over the history, so the filter can
+ * run on every reload. Rejections are counted in statistics.plausibility.rejections, tagged with
+ * the field and the rule.
+ */
+public class StatisticsPlausibilityFilter implements DerivedMetricStage {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(StatisticsPlausibilityFilter.class);
+
+    private final List<PlausibilityRule> rules;
+    private final MeterRegistry meterRegistry;
+
+    // null until statistics were accepted, then all values are accepted
+    private Statistics accepted;
+    // the checked values of the last rejection of every field and the rule which rejected them
+    private final Map<PlausibilityField, Rejection> rejections = new HashMap<>();
+
+    /**
+     * @param rules evaluated in this order, the first rejection of a field skips its other rules
+     * @param meterRegistry
+     */
+    public StatisticsPlausibilityFilter(List<PlausibilityRule> rules, MeterRegistry meterRegistry) {
+        this.rules = List.copyOf(rules);
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * sets the statistics new values are checked against, e.g. the published statistics which
+     * were restored or loaded by another instance
+     *
+     * @param statistics
+     */
+    public synchronized void setAccepted(Statistics statistics) {
+        accepted = statistics != null ? new Statistics(statistics) : null;
+        rejections.clear();
+    }
+
+    @Override
+    public void apply(Statistics statistics, Set<String> refreshedSources) {
+        check(statistics);
+    }
+
+    /**
+     * reverts the implausible fields of the candidate to the accepted values. The candidate is
+     * accepted afterwards.
+     *
+     * @param candidate the new statistics, modified in place
+     * @return the names of the rejected fields
+     */
+    public synchronized Set<String> check(Statistics candidate) {
+        Set<String> rejectedFields = new LinkedHashSet<>();
+        if (accepted != null) {
+            // reverting a daily field changes the other daily fields as well
+            Map<PlausibilityField, Object> checkedValues = new LinkedHashMap<>();
+            for (PlausibilityRule rule : rules) {
+                checkedValues.computeIfAbsent(
+                        rule.getField(), field -> field.checkedValues(candidate));
+            }
+            for (PlausibilityRule rule : rules) {
+                PlausibilityField field = rule.getField();
+                if (rejectedFields.contains(field.getName())) {
+                    continue;
+                }
+                Object values = checkedValues.get(field);
+                Rejection last = rejections.get(field);
+                if (last != null && Objects.equals(last.values, values)) {
+                    // e.g. the result of a source which was not reloaded
+                    logger.debug("Keep rejecting {} (rule {})", field, last.rule);
+                    reject(field, candidate, rejectedFields);
+                    continue;
+                }
+                Double value = field.value(candidate);
+                String rejectedBy = null;
+                if (value == null) {
+                    if (field.value(accepted) != null) {
+                        rejectedBy = "missing";
+                    }
+                } else if (!rule.isPlausible(value, candidate, accepted)) {
+                    rejectedBy = rule.getName();
+                }
+                if (rejectedBy != null) {
+                    logger.warn(
+                            "Implausible {}: {} (rule {}), keep {}",
+                            field,
+                            value,
+                            rejectedBy,
+                            field.value(accepted));
+                    rejections.put(field, new Rejection(values, rejectedBy));
+                    reject(field, candidate, rejectedFields);
+                    Counter.builder("statistics.plausibility.rejections")
+                            .tag("field", field.getName())
+                            .tag("rule", rejectedBy)
+                            .description(
+                                    "statistics values which were not published as implausible")
+                            .register(meterRegistry)
+                            .increment();
+                }
+            }
+            for (PlausibilityField field : checkedValues.keySet()) {
+                if (!rejectedFields.contains(field.getName())) {
+                    rejections.remove(field);
+                }
+            }
+        }
+        candidate.setRejectedFields(rejectedFields);
+        accepted = new Statistics(candidate);
+        return rejectedFields;
+    }
+
+    /** returns true if the history of the statistics was reverted to the accepted one */
+    public static boolean isHistoryRejected(Statistics statistics) {
+        return statistics.getRejectedFields().contains(PlausibilityField.NEW_INFECTIONS.getName())
+                || statistics
+                        .getRejectedFields()
+                        .contains(PlausibilityField.COVIDCODES_ENTERED.getName());
+    }
+
+    private void reject(
+            PlausibilityField field, Statistics candidate, Set<String> rejectedFields) {
+        field.revert(candidate, accepted);
+        rejectedFields.add(field.getName());
+    }
+
+    private static class Rejection {
+        private final Object values;
+        private final String rule;
+
+        private Rejection(Object values, String rule) {
+            this.values = values;
+            this.rule = rule;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.dpppt.additionalinfo.backend.ws.statistics;
+
+import java.util.BitSet;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.IntColumn;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+
+/**
+ * rejects a daily field if the latest day is an outlier compared to the days before. The mean and
+ * the standard deviation are computed in a single pass over the window before the latest day,
+ * whose days are mostly finalized and taken from the stored history.
+ */
+public class ZScoreRule implements PlausibilityRule {
+
+    // the values are counts, a constant window must not reject a change by one
+    private static final double MIN_STANDARD_DEVIATION = 1.0;
+
+    private final PlausibilityField field;
+    private final int window;
+    private final double maxZScore;
+
+    /**
+     * @param field a daily field
+     * @param window number of days before the latest day, at least half of them must have a value
+     * @param maxZScore largest plausible distance from the mean, in standard deviations
+     */
+    public ZScoreRule(PlausibilityField field, int window, double maxZScore) {
+        if (!field.isDaily()) {
+            throw new IllegalArgumentException(field + " is not a daily field");
+        }
+        if (window < 2) {
+            throw new IllegalArgumentException("window must be at least 2: " + window);
+        }
+        this.field = field;
+        this.window = window;
+        this.maxZScore = maxZScore;
+    }
+
+    @Override
+    public String getName() {
+        return "zscore";
+    }
+
+    @Override
+    public PlausibilityField getField() {
+        return field;
+    }
+
+    @Override
+    public boolean isPlausible(double value, Statistics candidate, Statistics current) {
+        IntColumn column = field.column(candidate);
+        int[] values = column.values();
+        BitSet presence = column.presence();
+        int latest = PlausibilityField.latestIndex(column);
+        int count = 0;
+        double sum = 0;
+        double sumOfSquares = 0;
+        for (int i = Math.max(0, latest - window); i < latest; i++) {
+            if (presence.get(i)) {
+                count++;
+                sum += values[i];
+                sumOfSquares += (double) values[i] * values[i];
+            }
+        }
+        if (count < 2 || count * 2 < window) {
+            // not enough history to judge
+            return true;
+        }
+        double mean = sum / count;
+        double variance = Math.max(0, sumOfSquares / count - mean * mean);
+        double standardDeviation = Math.max(MIN_STANDARD_DEVIATION, Math.sqrt(variance));
+        return Math.abs(value - mean) <= maxZScore * standardDeviation;
+    }
+}
@@ -0,0 +1,18 @@
+/*
+ * Created by Ubique Innovation AG
+ * https://www.ubique.ch
+ * Copyright (c) 2021. All rights reserved.
+ */
+
+CREATE TABLE t_daily_history(
+ pk_daily_history_id Serial NOT NULL,
+ day DATE NOT NULL,
+ covidcodes_entered INTEGER,
+ new_infections INTEGER
+)
+WITH (autovacuum_enabled=true);
+
+-- Add keys for table t_daily_history
+
+ALTER TABLE t_daily_history ADD CONSTRAINT PK_t_daily_history PRIMARY KEY (pk_daily_history_id);
+ALTER TABLE t_daily_history ADD CONSTRAINT unique_t_daily_history UNIQUE (day);
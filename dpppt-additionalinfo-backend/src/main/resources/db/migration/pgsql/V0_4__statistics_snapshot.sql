@@ -0,0 +1,16 @@
+/*
+ * Created by Ubique Innovation AG
+ * https://www.ubique.ch
+ * Copyright (c) 2021. All rights reserved.
+ */
+
+CREATE TABLE t_statistics_snapshot(
+ pk_statistics_snapshot_id Serial NOT NULL,
+ created_at TIMESTAMP WITH TIME ZONE NOT NULL,
+ statistics BYTEA NOT NULL
+)
+WITH (autovacuum_enabled=true);
+
+-- Add keys for table t_statistics_snapshot
+
+ALTER TABLE t_statistics_snapshot ADD CONSTRAINT PK_t_statistics_snapshot PRIMARY KEY (pk_statistics_snapshot_id);
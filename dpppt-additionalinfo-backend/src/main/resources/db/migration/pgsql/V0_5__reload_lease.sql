@@ -0,0 +1,16 @@
+/*
+ * Created by Ubique Innovation AG
+ * https://www.ubique.ch
+ * Copyright (c) 2021. All rights reserved.
+ */
+
+CREATE TABLE t_reload_lease(
+ name Character varying(50) NOT NULL,
+ holder Character varying(100) NOT NULL,
+ expires_at TIMESTAMP WITH TIME ZONE NOT NULL
+)
+WITH (autovacuum_enabled=true);
+
+-- Add keys for table t_reload_lease
+
+ALTER TABLE t_reload_lease ADD CONSTRAINT PK_t_reload_lease PRIMARY KEY (name);
@@ -0,0 +1,7 @@
+/*
+ * Created by Ubique Innovation AG
+ * https://www.ubique.ch
+ * Copyright (c) 2021. All rights reserved.
+ */
+
+ALTER TABLE t_daily_history ADD COLUMN new_infections_seven_day_average INTEGER;
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.dpppt.additionalinfo.backend.ws.data.CachingHistoryDataService;
+import org.dpppt.additionalinfo.backend.ws.data.HistoryDataService;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.History;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingHistoryDataServiceTest {
+
+    private final LocalDate today = LocalDate.now();
+    private CountingHistoryDataService delegate;
+    private MeterRegistry meterRegistry;
+    private CachingHistoryDataService cache;
+
+    @Before
+    public void setUp() {
+        delegate = new CountingHistoryDataService();
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new CachingHistoryDataService(delegate, 30, meterRegistry);
+    }
+
+    @Test
+    public void testReadThroughAndWriteThrough() {
+        delegate.sevenDayAvgs.put(today.minusDays(7), 10);
+
+        assertEquals(10, (int) cache.findLatestSevenDayAvgForDay(today.minusDays(7)));
+        assertEquals(10, (int) cache.findLatestSevenDayAvgForDay(today.minusDays(7)));
+        assertEquals(1, delegate.finds);
+
+        cache.upsertLatestSevenDayAvgForDay(20, today);
+        assertEquals(20, (int) delegate.sevenDayAvgs.get(today));
+        assertEquals(20, (int) cache.findLatestSevenDayAvgForDay(today));
+        assertEquals(1, delegate.finds);
+
+        // missing days are not cached
+        assertNull(cache.findLatestSevenDayAvgForDay(today.minusDays(1)));
+        assertNull(cache.findLatestSevenDayAvgForDay(today.minusDays(1)));
+        assertEquals(3, delegate.finds);
+
+        assertEquals(2, counter("hit"), 0);
+        assertEquals(3, counter("miss"), 0);
+        assertEquals(2, meterRegistry.get("cache.size").gauge().value(), 0);
+    }
+
+    @Test
+    public void testRetention() {
+        Map<LocalDate, Integer> avgs = new TreeMap<>();
+        for (int i = 0; i < 40; i++) {
+            avgs.put(today.minusDays(i), i);
+        }
+        cache.upsertLatestSevenDayAvgs(avgs);
+        assertEquals(40, delegate.sevenDayAvgs.size());
+        assertEquals(31, meterRegistry.get("cache.size").gauge().value(), 0);
+
+        // evicted days are loaded from the delegate
+        assertEquals(35, (int) cache.findLatestSevenDayAvgForDay(today.minusDays(35)));
+        assertEquals(1, delegate.finds);
+
+        cache.removeBefore(today.minusDays(10));
+        assertEquals(11, meterRegistry.get("cache.size").gauge().value(), 0);
+        assertNull(cache.findLatestSevenDayAvgForDay(today.minusDays(11)));
+        assertEquals(10, (int) cache.findLatestSevenDayAvgForDay(today.minusDays(10)));
+        assertEquals(2, delegate.finds);
+    }
+
+    @Test
+    public void testLoadDoesNotOverwriteConcurrentUpsert() {
+        delegate.sevenDayAvgs.put(today, 10);
+        // the value is upserted after the delegate read the old one
+        delegate.onFind = () -> cache.upsertLatestSevenDayAvgForDay(20, today);
+
+        assertEquals(20, (int) cache.findLatestSevenDayAvgForDay(today));
+        delegate.onFind = () -> {};
+        assertEquals(20, (int) cache.findLatestSevenDayAvgForDay(today));
+        assertEquals(1, delegate.finds);
+    }
+
+    @Test
+    public void testInvalidateAfterUpsertOfOtherInstance() {
+        cache.upsertLatestSevenDayAvgForDay(10, today.minusDays(20));
+        // e.g. the backfill of another instance
+        delegate.sevenDayAvgs.put(today.minusDays(20), 15);
+        assertEquals(10, (int) cache.findLatestSevenDayAvgForDay(today.minusDays(20)));
+
+        cache.invalidateCache();
+        assertEquals(15, (int) cache.findLatestSevenDayAvgForDay(today.minusDays(20)));
+        assertEquals(1, delegate.finds);
+    }
+
+    private double counter(String result) {
+        return meterRegistry.get("cache.gets").tag("result", result).counter().count();
+    }
+
+    private static class CountingHistoryDataService implements HistoryDataService {
+        private final TreeMap<LocalDate, Integer> sevenDayAvgs = new TreeMap<>();
+        private int finds = 0;
+        private Runnable onFind = () -> {};
+
+        @Override
+        public void upsertLatestSevenDayAvgForDay(Integer latestSevenDayAvg, LocalDate day) {
+            sevenDayAvgs.put(day, latestSevenDayAvg);
+        }
+
+        @Override
+        public Integer findLatestSevenDayAvgForDay(LocalDate day) {
+            finds++;
+            Integer latestSevenDayAvg = sevenDayAvgs.get(day);
+            onFind.run();
+            return latestSevenDayAvg;
+        }
+
+        @Override
+        public void upsertLatestSevenDayAvgs(Map<LocalDate, Integer> latestSevenDayAvgs) {
+            sevenDayAvgs.putAll(latestSevenDayAvgs);
+        }
+
+        @Override
+        public Map<LocalDate, Integer> findLatestSevenDayAvgs(LocalDate from, LocalDate to) {
+            finds++;
+            return new TreeMap<>(sevenDayAvgs.subMap(from, to));
+        }
+
+        @Override
+        public void upsertDailyHistory(List<History> history) {}
+
+        @Override
+        public List<History> findDailyHistory(LocalDate from, LocalDate to) {
+            return List.of();
+        }
+
+        @Override
+        public void removeBefore(LocalDate day) {
+            sevenDayAvgs.headMap(day).clear();
+        }
+    }
+}
@@ -11,16 +11,29 @@
 package org.dpppt.additionalinfo.backend.ws;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.io.ByteArrayInputStream;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
 import javax.servlet.Filter;
 import org.dpppt.additionalinfo.backend.ws.controller.DppptAdditionalInfoController;
 import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+import org.dpppt.additionalinfo.backend.ws.snapshot.StatisticsSnapshot;
+import org.dpppt.additionalinfo.backend.ws.snapshot.StatisticsSnapshotFactory;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -35,12 +48,14 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
             "ws.monitor.prometheus.user=prometheus",
             "ws.monitor.prometheus.password=prometheus",
             "management.endpoints.enabled-by-default=true",
-            "management.endpoints.web.exposure.include=*"
+            "management.endpoints.web.exposure.include=*",
+            "ws.statistics.startup.awaitreload=true"
         })
 public class DppptAdditionalInfoControllerTest extends BaseControllerTest {
 
     @Autowired private Filter springSecurityFilterChain;
     @Autowired private DppptAdditionalInfoController additionalInfoController;
+    @Autowired private StatisticsSnapshotFactory snapshotFactory;
 
     @Before
     public void setup() throws Exception {
@@ -123,6 +138,136 @@ public class DppptAdditionalInfoControllerTest extends BaseControllerTest {
         Assert.assertNotEquals(totalActiveUsers1, totalActiveUsers3);
     }
 
+    @Test
+    public void testStatisticsSignature() throws Exception {
+        var response =
+                mockMvc.perform(get("/v1/statistics"))
+                        .andExpect(status().is2xxSuccessful())
+                        .andReturn()
+                        .getResponse();
+        String[] jwt = response.getHeader("Signature").split("\\.");
+
+        // secp256k1 is only supported by bouncy castle, verify the jws manually
+        Signature verifier = Signature.getInstance("SHA256withPLAIN-ECDSA", "BC");
+        verifier.initVerify(
+                KeyFactory.getInstance("EC", "BC")
+                        .generatePublic(new X509EncodedKeySpec(publicKey.getEncoded())));
+        verifier.update((jwt[0] + "." + jwt[1]).getBytes(StandardCharsets.US_ASCII));
+        Assert.assertTrue(verifier.verify(Base64.getUrlDecoder().decode(jwt[2])));
+
+        Map<?, ?> claims = objectMapper.readValue(Base64.getUrlDecoder().decode(jwt[1]), Map.class);
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(response.getContentAsByteArray());
+        Assert.assertEquals(Base64.getEncoder().encodeToString(hash), claims.get("content-hash"));
+        Assert.assertEquals("dp3t", claims.get("iss"));
+    }
+
+    @Test
+    public void testStatisticsConditionalGet() throws Exception {
+        var response =
+                mockMvc.perform(get("/v1/statistics"))
+                        .andExpect(status().isOk())
+                        .andReturn()
+                        .getResponse();
+        String etag = response.getHeader("ETag");
+        String lastModified = response.getHeader("Last-Modified");
+        Assert.assertNotNull(etag);
+        Assert.assertNotNull(lastModified);
+
+        response =
+                mockMvc.perform(get("/v1/statistics").header("If-None-Match", etag))
+                        .andExpect(status().isNotModified())
+                        .andReturn()
+                        .getResponse();
+        Assert.assertEquals(0, response.getContentLength());
+        Assert.assertEquals(etag, response.getHeader("ETag"));
+        Assert.assertNotNull(response.getHeader("Cache-Control"));
+
+        mockMvc.perform(get("/v1/statistics").header("If-Modified-Since", lastModified))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/v1/statistics").header("If-None-Match", "\"outdated\""))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void testStatisticsRestore() throws Exception {
+        var response =
+                mockMvc.perform(get("/v1/statistics"))
+                        .andExpect(status().isOk())
+                        .andReturn()
+                        .getResponse();
+        StatisticsSnapshot restored =
+                snapshotFactory.restore(response.getContentAsByteArray(), Instant.now());
+        Assert.assertEquals(response.getHeader("ETag"), restored.getIdentity().getEtag());
+        Assert.assertEquals(response.getHeader("Digest"), restored.getDigest());
+        Assert.assertTrue(additionalInfoController.hasStatistics());
+    }
+
+    @Test
+    public void testStatisticsGzip() throws Exception {
+        var plain =
+                mockMvc.perform(get("/v1/statistics"))
+                        .andExpect(status().isOk())
+                        .andReturn()
+                        .getResponse();
+        var gzip =
+                mockMvc.perform(get("/v1/statistics").header("Accept-Encoding", "gzip, deflate"))
+                        .andExpect(status().isOk())
+                        .andReturn()
+                        .getResponse();
+        Assert.assertNull(plain.getHeader("Content-Encoding"));
+        Assert.assertEquals("gzip", gzip.getHeader("Content-Encoding"));
+        Assert.assertTrue(gzip.getHeaders("Vary").contains("Accept-Encoding"));
+        Assert.assertNotEquals(plain.getHeader("ETag"), gzip.getHeader("ETag"));
+
+        // the signature is computed over the decoded body and therefore the same for both
+        byte[] decoded =
+                new GZIPInputStream(new ByteArrayInputStream(gzip.getContentAsByteArray()))
+                        .readAllBytes();
+        Assert.assertArrayEquals(plain.getContentAsByteArray(), decoded);
+        Assert.assertEquals(plain.getHeader("Signature"), gzip.getHeader("Signature"));
+
+        mockMvc.perform(get("/v1/statistics").header("Accept-Encoding", "gzip;q=0"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"));
+        mockMvc.perform(
+                        get("/v1/statistics")
+                                .header("Accept-Encoding", "gzip")
+                                .header("If-None-Match", gzip.getHeader("ETag")))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", gzip.getHeader("ETag")));
+    }
+
+    @Test
+    public void testStatisticsMetrics() throws Exception {
+        String etag =
+                mockMvc.perform(get("/v1/statistics").header("Accept-Encoding", "gzip"))
+                        .andExpect(status().isOk())
+                        .andReturn()
+                        .getResponse()
+                        .getHeader("ETag");
+        mockMvc.perform(get("/v1/statistics").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        String metrics =
+                mockMvc.perform(
+                                get("/actuator/prometheus")
+                                        .header(
+                                                "Authorization",
+                                                "Basic cHJvbWV0aGV1czpwcm9tZXRoZXVz"))
+                        .andExpect(status().isOk())
+                        .andReturn()
+                        .getResponse()
+                        .getContentAsString();
+        Assert.assertTrue(metrics.contains("statistics_request_seconds_count{result=\"full\""));
+        Assert.assertTrue(
+                metrics.contains("statistics_request_seconds_count{result=\"not_modified\""));
+        Assert.assertTrue(
+                metrics.contains("statistics_response_size_bytes_count{encoding=\"gzip\""));
+        Assert.assertTrue(
+                metrics.contains("statistics_snapshot_stage_seconds_count{stage=\"sign\""));
+        Assert.assertTrue(metrics.contains("response_signing_seconds_count"));
+    }
+
     private Integer getTotalActiveUsers() throws Exception {
         var response =
                 mockMvc.perform(get("/v1/statistics"))
@@ -14,7 +14,8 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 @SpringBootTest(
         properties = {
             "management.endpoints.enabled-by-default=true",
-            "management.endpoints.web.exposure.include=*"
+            "management.endpoints.web.exposure.include=*",
+            "ws.statistics.startup.awaitreload=true"
         })
 public class DppptAdditionalInfoControllerWithoutActuatorSecurityTest extends BaseControllerTest {
     @Autowired ObjectMapper objectMapper;
@@ -14,8 +14,13 @@ import static org.junit.Assert.assertNull;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import org.dpppt.additionalinfo.backend.ws.data.HistoryDataService;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.History;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -46,5 +51,65 @@ public class HistoryDataServiceTest {
 		assertNull(historyDataService.findLatestSevenDayAvgForDay(now.minusDays(11)));
 		assertEquals(10, historyDataService.findLatestSevenDayAvgForDay(now.minusDays(10)));
 	}
-	
+
+	@Test
+	public void testUpsertAndFindSevenDayAvgs() {
+		LocalDate start = LocalDate.of(2020, 9, 1);
+		Map<LocalDate, Integer> avgs = new TreeMap<>();
+		for (int i = 0; i < 10; i++) {
+			avgs.put(start.plusDays(i), 100 + i);
+		}
+		historyDataService.upsertLatestSevenDayAvgs(avgs);
+		historyDataService.upsertLatestSevenDayAvgForDay(42, start.plusDays(3));
+		historyDataService.upsertLatestSevenDayAvgs(Map.of(start.plusDays(9), 1009));
+		
+		Map<LocalDate, Integer> found = historyDataService.findLatestSevenDayAvgs(start.plusDays(2), start.plusDays(12));
+		assertEquals(8, found.size());
+		assertEquals(start.plusDays(2), found.keySet().iterator().next());
+		assertEquals(102, found.get(start.plusDays(2)));
+		assertEquals(42, found.get(start.plusDays(3)));
+		assertEquals(1009, found.get(start.plusDays(9)));
+		assertEquals(42, historyDataService.findLatestSevenDayAvgForDay(start.plusDays(3)));
+		
+		assertEquals(0, historyDataService.findLatestSevenDayAvgs(start.minusDays(5), start).size());
+	}
+
+	@Test
+	public void testUpsertAndFindDailyHistory() {
+		LocalDate start = LocalDate.of(2020, 10, 1);
+		List<History> days = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			History history = new History();
+			history.setDate(start.plusDays(i));
+			history.setCovidcodesEntered(i);
+			history.setNewInfections(i == 5 ? null : 100 + i);
+			history.setNewInfectionsSevenDayAverage(i < 3 ? null : 50 + i);
+			days.add(history);
+		}
+		historyDataService.upsertDailyHistory(days);
+		
+		// overwrite the most recent days
+		List<History> updates = new ArrayList<>();
+		for (int i = 8; i < 10; i++) {
+			History history = new History();
+			history.setDate(start.plusDays(i));
+			history.setCovidcodesEntered(1000 + i);
+			history.setNewInfections(2000 + i);
+			updates.add(history);
+		}
+		historyDataService.upsertDailyHistory(updates);
+		
+		List<History> found = historyDataService.findDailyHistory(start.plusDays(2), start.plusDays(10));
+		assertEquals(8, found.size());
+		assertEquals(start.plusDays(2), found.get(0).getDate());
+		assertEquals(2, found.get(0).getCovidcodesEntered());
+		assertNull(found.get(3).getNewInfections());
+		assertNull(found.get(0).getNewInfectionsSevenDayAverage());
+		assertEquals(53, found.get(1).getNewInfectionsSevenDayAverage());
+		assertNull(found.get(7).getNewInfectionsSevenDayAverage());
+		assertEquals(1009, found.get(7).getCovidcodesEntered());
+		assertEquals(2009, found.get(7).getNewInfections());
+		
+		assertEquals(0, historyDataService.findDailyHistory(start.minusDays(5), start).size());
+	}
 }
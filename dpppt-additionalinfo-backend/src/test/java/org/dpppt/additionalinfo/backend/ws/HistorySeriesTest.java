@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.LocalDate;
+import java.util.List;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.History;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.HistorySeries;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+import org.junit.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+public class HistorySeriesTest {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    @Test
+    public void testSerializationMatchesHistoryList() throws Exception {
+        HistorySeries series = series();
+        List<History> days = series.toHistory(0, series.size());
+        assertEquals(
+                objectMapper.writeValueAsString(days), objectMapper.writeValueAsString(series));
+    }
+
+    @Test
+    public void testDeserialization() throws Exception {
+        Statistics statistics = new Statistics();
+        statistics.setHistory(series());
+        Statistics deserialized =
+                objectMapper.readValue(
+                        objectMapper.writeValueAsBytes(statistics), Statistics.class);
+
+        HistorySeries history = deserialized.getHistory();
+        assertEquals(LocalDate.of(2021, 2, 27), history.getStartDate());
+        assertEquals(4, history.size());
+        assertEquals(Integer.valueOf(12), history.covidcodesEntered().get(1));
+        assertNull(history.newInfections().get(1));
+        assertEquals(Integer.valueOf(103), history.newInfectionsSevenDayAverage().get(3));
+    }
+
+    @Test
+    public void testIndexOf() {
+        HistorySeries series = series();
+        assertEquals(-1, series.indexOf(LocalDate.of(2021, 2, 26)));
+        assertEquals(0, series.indexOf(LocalDate.of(2021, 2, 27)));
+        assertEquals(2, series.indexOf(LocalDate.of(2021, 3, 1)));
+        assertEquals(-1, series.indexOf(series.getEndDate()));
+        assertEquals(LocalDate.of(2021, 3, 2), series.getDate(3));
+    }
+
+    private static HistorySeries series() {
+        HistorySeries series = new HistorySeries(LocalDate.of(2021, 2, 27), 4);
+        for (int i = 0; i < series.size(); i++) {
+            series.covidcodesEntered().set(i, 11 + i);
+            if (i != 1) {
+                series.newInfections().set(i, 200 + i);
+            }
+            if (i > 1) {
+                series.newInfectionsSevenDayAverage().set(i, 100 + i);
+            }
+        }
+        return series;
+    }
+}
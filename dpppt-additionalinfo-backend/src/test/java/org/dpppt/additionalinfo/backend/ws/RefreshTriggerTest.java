@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws;
+
+import static org.junit.Assert.assertEquals;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import org.dpppt.additionalinfo.backend.ws.statistics.RefreshTrigger;
+import org.junit.Test;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+
+public class RefreshTriggerTest {
+
+    private final Instant now = Instant.parse("2021-03-01T10:20:00Z");
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RefreshTrigger trigger =
+            new RefreshTrigger(
+                    "test",
+                    Duration.ofHours(1),
+                    Duration.ofSeconds(42),
+                    Duration.ofMinutes(1),
+                    Duration.ofMinutes(10),
+                    Clock.fixed(now, ZoneOffset.UTC),
+                    meterRegistry);
+
+    @Test
+    public void testAlignedWithOffset() {
+        assertEquals(Instant.parse("2021-03-01T11:00:42Z"), nextRun());
+        assertEquals(
+                now.plus(Duration.ofMinutes(40)).plusSeconds(42).getEpochSecond(),
+                meterRegistry.get("statistics.refresh.next.run").gauge().value(),
+                0);
+    }
+
+    @Test
+    public void testBackoffAfterFailures() {
+        Runnable failing = trigger.task(() -> false);
+        failing.run();
+        assertEquals(now.plus(Duration.ofMinutes(1)), nextRun());
+        failing.run();
+        assertEquals(now.plus(Duration.ofMinutes(2)), nextRun());
+        failing.run();
+        failing.run();
+        assertEquals(now.plus(Duration.ofMinutes(8)), nextRun());
+        trigger.task(
+                        () -> {
+                            throw new IllegalStateException("failed");
+                        })
+                .run();
+        // capped by the max retry delay
+        assertEquals(now.plus(Duration.ofMinutes(10)), nextRun());
+        assertEquals(
+                5, meterRegistry.get("statistics.refresh.consecutive.failures").gauge().value(), 0);
+
+        trigger.task(() -> true).run();
+        assertEquals(Instant.parse("2021-03-01T11:00:42Z"), nextRun());
+        assertEquals(0, trigger.getConsecutiveFailures());
+        assertEquals(now, trigger.getLastSuccess());
+    }
+
+    @Test
+    public void testRetryNotAfterRegularRun() {
+        RefreshTrigger hourly =
+                new RefreshTrigger(
+                        "hourly",
+                        Duration.ofHours(1),
+                        Duration.ZERO,
+                        Duration.ofMinutes(30),
+                        Duration.ofHours(2),
+                        Clock.fixed(now, ZoneOffset.UTC),
+                        meterRegistry);
+        Runnable failing = hourly.task(() -> false);
+        failing.run();
+        failing.run();
+        assertEquals(
+                Instant.parse("2021-03-01T11:00:00Z"),
+                hourly.nextExecutionTime(new SimpleTriggerContext()).toInstant());
+    }
+
+    private Instant nextRun() {
+        return trigger.nextExecutionTime(new SimpleTriggerContext()).toInstant();
+    }
+}
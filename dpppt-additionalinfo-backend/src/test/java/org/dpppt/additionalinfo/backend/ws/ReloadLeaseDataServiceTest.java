@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import javax.sql.DataSource;
+
+import org.dpppt.additionalinfo.backend.ws.data.JdbcReloadLeaseDataServiceImpl;
+import org.dpppt.additionalinfo.backend.ws.data.ReloadLeaseDataService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@SpringBootTest
+@RunWith(SpringJUnit4ClassRunner.class)
+@ComponentScan(basePackages = {"org.dpppt.additionalinfo.backend.ws.config"})
+@ActiveProfiles("postgres-test")
+public class ReloadLeaseDataServiceTest {
+	
+	@Autowired DataSource dataSource;
+	
+	@Test
+	public void testOnlyOneHolder() {
+		ReloadLeaseDataService first = new JdbcReloadLeaseDataServiceImpl(dataSource, "first");
+		ReloadLeaseDataService second = new JdbcReloadLeaseDataServiceImpl(dataSource, "second");
+		
+		assertTrue(first.tryAcquireLease("test-lease", Duration.ofMinutes(10)));
+		assertFalse(second.tryAcquireLease("test-lease", Duration.ofMinutes(10)));
+		// the holder can renew its lease
+		assertTrue(first.tryAcquireLease("test-lease", Duration.ofMinutes(10)));
+		// other leases are independent
+		assertTrue(second.tryAcquireLease("other-lease", Duration.ofMinutes(10)));
+		
+		// releasing a lease of another holder has no effect
+		second.releaseLease("test-lease");
+		assertFalse(second.tryAcquireLease("test-lease", Duration.ofMinutes(10)));
+		first.releaseLease("test-lease");
+		assertTrue(second.tryAcquireLease("test-lease", Duration.ofMinutes(10)));
+	}
+	
+	@Test
+	public void testExpiredLease() {
+		ReloadLeaseDataService first = new JdbcReloadLeaseDataServiceImpl(dataSource, "first");
+		ReloadLeaseDataService second = new JdbcReloadLeaseDataServiceImpl(dataSource, "second");
+		
+		assertTrue(first.tryAcquireLease("expiring-lease", Duration.ZERO));
+		assertTrue(second.tryAcquireLease("expiring-lease", Duration.ofMinutes(10)));
+		assertFalse(first.tryAcquireLease("expiring-lease", Duration.ofMinutes(10)));
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.Random;
+import org.dpppt.additionalinfo.backend.ws.statistics.RollingAggregate;
+import org.dpppt.additionalinfo.backend.ws.statistics.RollingAggregate.Alignment;
+import org.junit.Test;
+
+public class RollingAggregateTest {
+
+    @Test
+    public void testCenteredMeanMatchesWindowScan() {
+        Random random = new Random(42);
+        int days = 500;
+        int[] values = new int[days];
+        BitSet present = new BitSet(days);
+        for (int i = 0; i < days; i++) {
+            // leading and trailing days without values, single gaps in between
+            if (i > 10 && i < days - 5 && i % 5 != 0) {
+                present.set(i);
+                values[i] = random.nextInt(3000);
+            }
+        }
+        int[] means = new int[days];
+        BitSet meansPresent = new BitSet(days);
+        new RollingAggregate(7, Alignment.CENTERED).mean(values, present, means, meansPresent);
+
+        for (int i = 0; i < days; i++) {
+            boolean expectedPresent = i >= 11 + 3 && i <= days - 6 - 3;
+            assertEquals("day " + i, expectedPresent, meansPresent.get(i));
+            if (expectedPresent) {
+                int sum = 0;
+                int count = 0;
+                for (int j = i - 3; j <= i + 3; j++) {
+                    if (present.get(j)) {
+                        sum += values[j];
+                        count++;
+                    }
+                }
+                assertEquals("day " + i, sum / count, means[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testTrailingMean() {
+        int[] values = {1, 2, 3, 4, 5, 6};
+        BitSet present = new BitSet();
+        present.set(0, 6);
+        present.clear(3);
+        int[] means = new int[values.length];
+        BitSet meansPresent = new BitSet();
+        new RollingAggregate(3, Alignment.TRAILING).mean(values, present, means, meansPresent);
+
+        assertEquals(2, meansPresent.nextSetBit(0));
+        assertEquals(4, meansPresent.cardinality());
+        assertEquals(2, means[2]);
+        assertEquals(2, means[3]); // (2 + 3) / 2
+        assertEquals(4, means[4]); // (3 + 5) / 2
+        assertEquals(5, means[5]); // (5 + 6) / 2
+    }
+
+    @Test
+    public void testFourteenDayTrailingMean() {
+        int[] values = new int[20];
+        BitSet present = new BitSet();
+        present.set(0, values.length);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+        int[] means = new int[values.length];
+        BitSet meansPresent = new BitSet();
+        new RollingAggregate(14, Alignment.TRAILING).mean(values, present, means, meansPresent);
+
+        assertFalse(meansPresent.get(12));
+        assertTrue(meansPresent.get(13));
+        assertEquals(6, means[13]); // (0 + ... + 13) / 14
+        assertEquals(12, means[19]); // (6 + ... + 19) / 14
+    }
+
+    @Test
+    public void testWithoutValues() {
+        int[] means = {1, 2, 3, 4, 5};
+        BitSet meansPresent = new BitSet();
+        meansPresent.set(0, 5);
+        new RollingAggregate(7, Alignment.CENTERED)
+                .mean(new int[5], new BitSet(), means, meansPresent);
+        assertTrue(meansPresent.isEmpty());
+        // missing values are 0
+        assertArrayEquals(new int[5], means);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCenteredWindowMustBeOdd() {
+        new RollingAggregate(14, Alignment.CENTERED);
+    }
+}
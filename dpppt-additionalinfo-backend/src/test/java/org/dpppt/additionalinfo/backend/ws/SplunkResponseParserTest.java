@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.dpppt.additionalinfo.backend.ws.statistics.SplunkResponseParser;
+import org.dpppt.additionalinfo.backend.ws.statistics.SplunkResult;
+import org.junit.Test;
+
+public class SplunkResponseParserTest {
+
+    private static final String RESPONSE =
+            "{\"preview\":true,\"offset\":0,\"result\":{\"_time\":\"2021-03-02 00:00:00.000 CET\",\"positiveTestCount\":\"1\"}}\n"
+                    + "{\"preview\":false,\"offset\":0,\"result\":{\"_time\":\"2021-03-01 00:00:00.000 CET\",\"positiveTestCount\":\"NO_DATA\",\"00_days\":\"3\"}}\n"
+                    + "{\"preview\":false,\"offset\":1,\"result\":{\"_time\":\"2021-03-02 00:00:00.000 CET\",\"positiveTestCount\":\"42\",\"Total\":7}}\n"
+                    + "{\"preview\":false,\"offset\":2,\"lastrow\":true}\n";
+
+    @Test
+    public void testParse() throws Exception {
+        List<SplunkResult> results = new ArrayList<>();
+        int skipped =
+                SplunkResponseParser.parse(
+                        new ByteArrayInputStream(RESPONSE.getBytes(StandardCharsets.UTF_8)),
+                        results::add);
+
+        assertEquals(1, skipped);
+        assertEquals(2, results.size());
+        assertNull(results.get(0).getPositiveTestCount());
+        assertEquals(3, results.get(0).getAfterZeroDays());
+        assertEquals(Integer.valueOf(42), results.get(1).getPositiveTestCount());
+        assertEquals(7, results.get(1).getTotal());
+    }
+
+    @Test
+    public void testParseDescendingByTime() throws Exception {
+        List<SplunkResult> results =
+                SplunkResponseParser.parseDescendingByTime(
+                        new ByteArrayInputStream(RESPONSE.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(LocalDate.of(2021, 3, 2), results.get(0).getTime().toLocalDate());
+        assertEquals(LocalDate.of(2021, 3, 1), results.get(1).getTime().toLocalDate());
+    }
+
+    @Test
+    public void testParseEmpty() throws Exception {
+        assertEquals(
+                0,
+                SplunkResponseParser.parseDescendingByTime(new ByteArrayInputStream(new byte[0]))
+                        .size());
+    }
+}
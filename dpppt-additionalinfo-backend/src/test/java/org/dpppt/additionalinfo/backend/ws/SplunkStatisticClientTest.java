@@ -0,0 +1,488 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.HistorySeries;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+import org.dpppt.additionalinfo.backend.ws.statistics.BoundsRule;
+import org.dpppt.additionalinfo.backend.ws.statistics.PlausibilityField;
+import org.dpppt.additionalinfo.backend.ws.statistics.SplunkHttpClientFactory;
+import org.dpppt.additionalinfo.backend.ws.statistics.SplunkSearchJobClient;
+import org.dpppt.additionalinfo.backend.ws.statistics.SplunkSearchMode;
+import org.dpppt.additionalinfo.backend.ws.statistics.SplunkStatisticClient;
+import org.dpppt.additionalinfo.backend.ws.statistics.StatisticsPlausibilityFilter;
+import org.dpppt.additionalinfo.backend.ws.util.InMemoryHistoryDataService;
+import org.dpppt.additionalinfo.backend.ws.util.SplunkStandInServer;
+import org.dpppt.additionalinfo.backend.ws.util.SplunkStandInServer.Failure;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** runs the whole http and parsing path of the splunk client against the stand-in server */
+public class SplunkStatisticClientTest {
+
+    private static final String ACTIVE_APPS = "search activeApps";
+    private static final String USED_AUTH_CODE_COUNT = "search usedAuthCodeCount";
+    private static final String POSITIVE_TEST_COUNT = "search positiveTestCount";
+    private static final String COVIDCODES_ENTERED = "search covidCodesEntered";
+
+    // three years of daily values
+    private static final int DAYS = 3 * 365;
+    private static final int PREVIEW_ROWS = 50;
+    private static final int PAGE_SIZE = 500;
+
+    private final LocalDate today = LocalDate.now();
+    private final LocalDate startDate = today.minusDays(DAYS);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private SplunkStandInServer server;
+
+    @Before
+    public void setUp() {
+        server =
+                new SplunkStandInServer()
+                        .respond(
+                                ACTIVE_APPS,
+                                SplunkStandInServer.singleResponse(
+                                        today, Map.of("active Apps", "1234")))
+                        .respond(
+                                USED_AUTH_CODE_COUNT,
+                                SplunkStandInServer.dailyResponse(
+                                        "usedAuthorizationCodeCount",
+                                        startDate,
+                                        DAYS,
+                                        i -> Integer.toString(i % 100),
+                                        PREVIEW_ROWS))
+                        .respond(
+                                POSITIVE_TEST_COUNT,
+                                SplunkStandInServer.dailyResponse(
+                                        "positiveTestCount",
+                                        startDate,
+                                        DAYS,
+                                        i -> i == 10 ? "NO_DATA" : Integer.toString(100 + i),
+                                        PREVIEW_ROWS))
+                        .respond(
+                                COVIDCODES_ENTERED,
+                                SplunkStandInServer.singleResponse(
+                                        today,
+                                        Map.of(
+                                                "00_days", "1",
+                                                "01_days", "2",
+                                                "02_days", "3",
+                                                "Total", "12")))
+                        .start();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testReload() {
+        SplunkStatisticClient client = client(Duration.ofSeconds(30), Map.of());
+        try {
+            Statistics statistics = client.getStatistics();
+
+            assertEquals(4, server.getRequests().size());
+            assertEquals(0, server.getResultPageRequests());
+            assertEquals(1234, (int) statistics.getTotalActiveUsers());
+            assertEquals(0.5, statistics.getCovidcodesEntered0to2dPrevWeek(), 0);
+            HistorySeries history = statistics.getHistory();
+            assertEquals(DAYS, history.size());
+            assertNull(history.newInfections().get(10));
+            assertEquals(111, (int) history.newInfections().get(11));
+            assertEquals(99, (int) history.covidcodesEntered().get(99));
+            assertEquals(
+                    PREVIEW_ROWS,
+                    meterRegistry
+                            .get("splunk.search.preview.dropped")
+                            .tag("search", "positivetestcount")
+                            .counter()
+                            .count(),
+                    0);
+
+            // within the history refresh interval, only the active apps are queried again
+            Statistics reloaded = client.getStatistics();
+            assertEquals(5, server.getRequests().size());
+            assertEquals(ACTIVE_APPS, server.getRequests().get(4).get("search"));
+            assertEquals(111, (int) reloaded.getHistory().newInfections().get(11));
+            assertEquals(
+                    statistics.getTotalCovidcodesEntered(), reloaded.getTotalCovidcodesEntered());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testMissingDayIsQueriedAgain() {
+        // splunk did not return a day which has left the incremental window since
+        int missing = DAYS - 10;
+        respondDaily(missing);
+        InMemoryHistoryDataService historyDataService = new InMemoryHistoryDataService();
+        SplunkStatisticClient client =
+                client(Duration.ofSeconds(30), Map.of(), historyDataService);
+        try {
+            client.getStatistics();
+        } finally {
+            client.shutdown();
+        }
+        LocalDate missingDay = startDate.plusDays(missing);
+        assertTrue(
+                historyDataService.findDailyHistory(missingDay, missingDay.plusDays(1)).isEmpty());
+
+        respondDaily(-1);
+        client = client(Duration.ofSeconds(30), Map.of(), historyDataService);
+        try {
+            Statistics statistics = client.getStatistics();
+            // the history is queried from the missing day on, not from the incremental window
+            assertEquals(8, server.getRequests().size());
+            for (Map<String, String> request : server.getRequests().subList(4, 8)) {
+                if (POSITIVE_TEST_COUNT.equals(request.get("search"))) {
+                    assertEquals("-10d@d", request.get("earliest_time"));
+                }
+            }
+            assertEquals(100 + missing, (int) statistics.getHistory().newInfections().get(missing));
+            assertEquals(
+                    1,
+                    historyDataService
+                            .findDailyHistory(missingDay, missingDay.plusDays(1))
+                            .size());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testBackfillStoresMissingAveragesWithinRetention() {
+        InMemoryHistoryDataService historyDataService = new InMemoryHistoryDataService();
+        SplunkStatisticClient client =
+                client(Duration.ofSeconds(30), Map.of(), historyDataService);
+        try {
+            client.requestBackfill();
+            client.getStatistics();
+        } finally {
+            client.shutdown();
+        }
+        Map<LocalDate, Integer> stored =
+                historyDataService.findLatestSevenDayAvgs(startDate, today.plusDays(1));
+        assertFalse(stored.isEmpty());
+        // older days are removed every night and were never published by this service
+        for (LocalDate day : stored.keySet()) {
+            assertFalse(day.isBefore(today.minusDays(30)));
+        }
+    }
+
+    @Test
+    public void testRejectedHistoryIsNotStored() {
+        InMemoryHistoryDataService historyDataService = new InMemoryHistoryDataService();
+        StatisticsPlausibilityFilter filter =
+                new StatisticsPlausibilityFilter(
+                        List.of(new BoundsRule(PlausibilityField.NEW_INFECTIONS, 0, 5000)),
+                        meterRegistry);
+        SplunkStatisticClient client =
+                client(Duration.ofSeconds(30), Map.of(), historyDataService, filter);
+        try {
+            Statistics statistics = client.getStatistics();
+            LocalDate latestDay = startDate.plusDays(DAYS - 1);
+            Integer sevenDayAvg = historyDataService.findLatestSevenDayAvgForDay(latestDay);
+
+            server.respond(
+                    POSITIVE_TEST_COUNT,
+                    SplunkStandInServer.dailyResponse(
+                            "positiveTestCount",
+                            startDate,
+                            DAYS,
+                            i -> i == DAYS - 1 ? "100000" : "7",
+                            PREVIEW_ROWS));
+            client.requestBackfill();
+            Statistics rejected = client.getStatistics();
+            assertEquals(Set.of("history.newInfections"), rejected.getRejectedFields());
+            assertEquals(111, (int) rejected.getHistory().newInfections().get(11));
+            assertEquals(
+                    statistics.getNewInfectionsSevenDayAvg(),
+                    rejected.getNewInfectionsSevenDayAvg());
+            // neither the days nor the seven day average of the rejected history are stored
+            LocalDate day = startDate.plusDays(11);
+            assertEquals(
+                    111,
+                    (int)
+                            historyDataService
+                                    .findDailyHistory(day, day.plusDays(1))
+                                    .get(0)
+                                    .getNewInfections());
+            assertEquals(sevenDayAvg, historyDataService.findLatestSevenDayAvgForDay(latestDay));
+
+            // the reused result of the search is rejected again, but only counted once
+            Statistics reused = client.getStatistics();
+            assertEquals(111, (int) reused.getHistory().newInfections().get(11));
+            assertEquals(
+                    1,
+                    meterRegistry
+                            .get("statistics.plausibility.rejections")
+                            .tag("field", "history.newInfections")
+                            .counter()
+                            .count(),
+                    0);
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testSearchJobs() {
+        server.setJobPolls(2);
+        SplunkStatisticClient client =
+                client(
+                        Duration.ofSeconds(30),
+                        Map.of(
+                                SplunkStatisticClient.SEARCH_USED_AUTH_CODE_COUNT,
+                                SplunkSearchMode.JOB,
+                                SplunkStatisticClient.SEARCH_POSITIVE_TEST_COUNT,
+                                SplunkSearchMode.JOB));
+        try {
+            Statistics statistics = client.getStatistics();
+
+            // two searches with three pages each
+            assertEquals(4, server.getRequests().size());
+            assertEquals(6, server.getResultPageRequests());
+            assertEquals(1234, (int) statistics.getTotalActiveUsers());
+            HistorySeries history = statistics.getHistory();
+            assertEquals(DAYS, history.size());
+            assertNull(history.newInfections().get(10));
+            assertEquals(111, (int) history.newInfections().get(11));
+            assertEquals(99, (int) history.covidcodesEntered().get(99));
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testSearchJobCancelled() throws Exception {
+        server.setJobPolls(Integer.MAX_VALUE);
+        SplunkStatisticClient client =
+                client(
+                        Duration.ofMillis(500),
+                        Map.of(
+                                SplunkStatisticClient.SEARCH_POSITIVE_TEST_COUNT,
+                                SplunkSearchMode.JOB));
+        try {
+            assertThrows(RuntimeException.class, client::getStatistics);
+            // the job is cancelled by the interrupted search in the background
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (server.getCancelledJobs() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, server.getCancelledJobs());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedSearchKeepsLastResult() {
+        SplunkStatisticClient client = client(Duration.ofSeconds(30), Map.of());
+        try {
+            Statistics statistics = client.getStatistics();
+            assertTrue(statistics.getStaleFields().isEmpty());
+
+            server.forget(POSITIVE_TEST_COUNT)
+                    .respond(
+                            ACTIVE_APPS,
+                            SplunkStandInServer.singleResponse(
+                                    today, Map.of("active Apps", "4321")));
+            client.requestBackfill();
+            Statistics partial = client.getStatistics();
+            assertEquals(4321, (int) partial.getTotalActiveUsers());
+            assertEquals(111, (int) partial.getHistory().newInfections().get(11));
+            assertEquals(
+                    statistics.getNewInfectionsSevenDayAvg(),
+                    partial.getNewInfectionsSevenDayAvg());
+            assertTrue(partial.getStaleFields().containsKey("history.newInfections"));
+            assertFalse(partial.getStaleFields().containsKey("totalActiveUsers"));
+            assertEquals(
+                    1,
+                    meterRegistry
+                            .get("statistics.reload")
+                            .tag("mode", "backfill")
+                            .tag("outcome", "partial")
+                            .timer()
+                            .count());
+
+            // the failed search is queried again by the next reload, the backfill is repeated
+            server.respond(
+                    POSITIVE_TEST_COUNT,
+                    SplunkStandInServer.dailyResponse(
+                            "positiveTestCount", startDate, DAYS, i -> "7", PREVIEW_ROWS));
+            Statistics reloaded = client.getStatistics();
+            assertTrue(reloaded.getStaleFields().isEmpty());
+            assertEquals(7, (int) reloaded.getHistory().newInfections().get(11));
+            assertEquals(
+                    1,
+                    meterRegistry
+                            .get("statistics.reload")
+                            .tag("mode", "backfill")
+                            .tag("outcome", "success")
+                            .timer()
+                            .count());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testStatusFailure() {
+        server.setFailures(1, Failure.STATUS);
+        SplunkStatisticClient client = client(Duration.ofSeconds(30), Map.of());
+        try {
+            assertThrows(RuntimeException.class, client::getStatistics);
+            assertTrue(failures("status") > 0);
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testTruncatedResponse() {
+        server.setFailures(1, Failure.TRUNCATED);
+        SplunkStatisticClient client = client(Duration.ofSeconds(30), Map.of());
+        try {
+            assertThrows(RuntimeException.class, client::getStatistics);
+            assertTrue(failures("io") > 0);
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testQueryTimeout() throws Exception {
+        server.setLatency(Duration.ofSeconds(2));
+        SplunkStatisticClient client = client(Duration.ofMillis(200), Map.of());
+        try {
+            long start = System.nanoTime();
+            assertThrows(RuntimeException.class, client::getStatistics);
+            assertTrue(System.nanoTime() - start < Duration.ofSeconds(2).toNanos());
+            // the requests were aborted instead of waiting for the response
+            Thread.sleep(500);
+            assertEquals(0, leasedConnections(), 0);
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    /** responds to the history searches with all days except the given one */
+    private void respondDaily(int missing) {
+        server.respond(
+                        USED_AUTH_CODE_COUNT,
+                        SplunkStandInServer.dailyResponse(
+                                "usedAuthorizationCodeCount",
+                                startDate,
+                                DAYS,
+                                i -> i == missing ? null : Integer.toString(i % 100),
+                                PREVIEW_ROWS))
+                .respond(
+                        POSITIVE_TEST_COUNT,
+                        SplunkStandInServer.dailyResponse(
+                                "positiveTestCount",
+                                startDate,
+                                DAYS,
+                                i -> i == missing ? null : Integer.toString(100 + i),
+                                PREVIEW_ROWS));
+    }
+
+    private double failures(String cause) {
+        return meterRegistry.get("splunk.search.failures").tag("cause", cause).counters().stream()
+                .mapToDouble(Counter::count)
+                .sum();
+    }
+
+    private double leasedConnections() {
+        return meterRegistry
+                .get("httpcomponents.httpclient.pool.total.connections")
+                .tag("state", "leased")
+                .gauge()
+                .value();
+    }
+
+    private SplunkStatisticClient client(
+            Duration queryTimeout, Map<String, SplunkSearchMode> searchModes) {
+        return client(queryTimeout, searchModes, new InMemoryHistoryDataService());
+    }
+
+    private SplunkStatisticClient client(
+            Duration queryTimeout,
+            Map<String, SplunkSearchMode> searchModes,
+            InMemoryHistoryDataService historyDataService) {
+        return client(
+                queryTimeout,
+                searchModes,
+                historyDataService,
+                new StatisticsPlausibilityFilter(List.of(), meterRegistry));
+    }
+
+    private SplunkStatisticClient client(
+            Duration queryTimeout,
+            Map<String, SplunkSearchMode> searchModes,
+            InMemoryHistoryDataService historyDataService,
+            StatisticsPlausibilityFilter plausibilityFilter) {
+        CloseableHttpClient httpClient =
+                SplunkHttpClientFactory.create(
+                        8,
+                        4,
+                        Duration.ofSeconds(5),
+                        Duration.ofSeconds(5),
+                        Duration.ofSeconds(5),
+                        Duration.ofMinutes(1),
+                        Duration.ofMinutes(1),
+                        meterRegistry);
+        return new SplunkStatisticClient(
+                historyDataService,
+                server.getUrl(),
+                "user",
+                "password",
+                ACTIVE_APPS,
+                USED_AUTH_CODE_COUNT,
+                POSITIVE_TEST_COUNT,
+                COVIDCODES_ENTERED,
+                startDate,
+                0,
+                null,
+                queryTimeout,
+                queryTimeout,
+                7,
+                Duration.ofHours(1),
+                30,
+                httpClient,
+                searchModes,
+                new SplunkSearchJobClient(
+                        httpClient,
+                        server.getJobsUrl(),
+                        Duration.ofMillis(10),
+                        Duration.ofMillis(50),
+                        PAGE_SIZE),
+                plausibilityFilter,
+                meterRegistry);
+    }
+}
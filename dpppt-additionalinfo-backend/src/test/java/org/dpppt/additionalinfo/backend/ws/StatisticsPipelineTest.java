@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+import org.dpppt.additionalinfo.backend.ws.statistics.MetricResult;
+import org.dpppt.additionalinfo.backend.ws.statistics.MetricSource;
+import org.dpppt.additionalinfo.backend.ws.statistics.StatisticsPipeline;
+import org.junit.After;
+import org.junit.Test;
+
+public class StatisticsPipelineTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2021-03-01T10:00:00Z"));
+    private final CountingSource activeUsers =
+            new CountingSource("activeusers", Duration.ZERO, (s, n) -> s.setTotalActiveUsers(n));
+    private final CountingSource covidcodes =
+            new CountingSource(
+                    "covidcodes", Duration.ofHours(1), (s, n) -> s.setTotalCovidcodesEntered(n));
+    private final List<Set<String>> refreshedSources = new ArrayList<>();
+    private final StatisticsPipeline pipeline =
+            new StatisticsPipeline(
+                    "test-source",
+                    Statistics::new,
+                    List.of(activeUsers, covidcodes),
+                    List.of((statistics, refreshed) -> refreshedSources.add(refreshed)),
+                    2,
+                    Duration.ofSeconds(10),
+                    clock);
+
+    @After
+    public void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    public void testSourcesAreRefreshedOnTheirOwnCadence() {
+        Statistics statistics = pipeline.run(false);
+        assertEquals(1, (int) statistics.getTotalActiveUsers());
+        assertEquals(1, (int) statistics.getTotalCovidcodesEntered());
+
+        clock.advance(Duration.ofMinutes(30));
+        statistics = pipeline.run(false);
+        assertEquals(2, (int) statistics.getTotalActiveUsers());
+        // the result of the last load is merged again
+        assertEquals(1, (int) statistics.getTotalCovidcodesEntered());
+
+        clock.advance(Duration.ofMinutes(30));
+        statistics = pipeline.run(false);
+        assertEquals(3, (int) statistics.getTotalActiveUsers());
+        assertEquals(2, (int) statistics.getTotalCovidcodesEntered());
+
+        statistics = pipeline.run(true);
+        assertEquals(3, (int) statistics.getTotalCovidcodesEntered());
+
+        assertEquals(
+                List.of(
+                        Set.of("activeusers", "covidcodes"),
+                        Set.of("activeusers"),
+                        Set.of("activeusers", "covidcodes"),
+                        Set.of("activeusers", "covidcodes")),
+                refreshedSources);
+    }
+
+    @Test
+    public void testFailedSourceKeepsLastResult() {
+        Instant firstRun = clock.instant();
+        pipeline.run(false);
+        clock.advance(Duration.ofHours(1));
+
+        covidcodes.fail = true;
+        Statistics statistics = pipeline.run(false);
+        // the active users of the same run are kept
+        assertEquals(2, (int) statistics.getTotalActiveUsers());
+        assertEquals(1, (int) statistics.getTotalCovidcodesEntered());
+        assertEquals(Map.of("covidcodes", firstRun), statistics.getStaleFields());
+        assertEquals(firstRun, pipeline.getLoadedAt("covidcodes"));
+        assertEquals(Set.of("activeusers"), refreshedSources.get(1));
+
+        // the failed source is still due
+        covidcodes.fail = false;
+        statistics = pipeline.run(false);
+        assertEquals(3, (int) statistics.getTotalActiveUsers());
+        assertEquals(3, (int) statistics.getTotalCovidcodesEntered());
+        assertTrue(statistics.getStaleFields().isEmpty());
+    }
+
+    @Test
+    public void testRunFailsWithoutResult() {
+        covidcodes.fail = true;
+        assertThrows(RuntimeException.class, () -> pipeline.run(false));
+
+        // the active users of the failed run are kept
+        assertNotNull(pipeline.getLoadedAt("activeusers"));
+        assertTrue(pipeline.isDue(covidcodes));
+
+        covidcodes.fail = false;
+        Statistics statistics = pipeline.run(false);
+        assertEquals(2, (int) statistics.getTotalActiveUsers());
+        assertEquals(2, (int) statistics.getTotalCovidcodesEntered());
+    }
+
+    @Test
+    public void testSourcesOfFailedRunAreDerivedByNextRun() {
+        activeUsers.fail = true;
+        assertThrows(RuntimeException.class, () -> pipeline.run(false));
+        assertTrue(refreshedSources.isEmpty());
+
+        // the covid codes are not due, but the derived stages did not see them yet
+        activeUsers.fail = false;
+        Statistics statistics = pipeline.run(false);
+        assertEquals(1, covidcodes.loads.get());
+        assertEquals(1, (int) statistics.getTotalCovidcodesEntered());
+        assertEquals(List.of(Set.of("activeusers", "covidcodes")), refreshedSources);
+
+        pipeline.run(false);
+        assertEquals(Set.of("activeusers"), refreshedSources.get(1));
+    }
+
+    @Test
+    public void testSourceWithOwnTimeout() {
+        activeUsers.delay = Duration.ofMillis(500);
+        activeUsers.timeout = Duration.ofSeconds(10);
+        covidcodes.delay = Duration.ofSeconds(2);
+        StatisticsPipeline shortTimeout =
+                new StatisticsPipeline(
+                        "test-timeout",
+                        Statistics::new,
+                        List.of(activeUsers, covidcodes),
+                        List.of(),
+                        2,
+                        Duration.ofMillis(100),
+                        clock);
+        try {
+            assertThrows(RuntimeException.class, () -> shortTimeout.run(false));
+            // only the source without a timeout of its own ran into the timeout of the pipeline
+            assertNotNull(shortTimeout.getLoadedAt("activeusers"));
+            assertTrue(shortTimeout.isDue(covidcodes));
+            assertEquals(1, covidcodes.cancels.get());
+            assertEquals(0, activeUsers.cancels.get());
+        } finally {
+            shortTimeout.shutdown();
+        }
+    }
+
+    @Test
+    public void testTimeoutStartsWithLoad() {
+        activeUsers.delay = Duration.ofMillis(700);
+        covidcodes.delay = Duration.ofMillis(700);
+        // the second source waits for the thread of the first one
+        StatisticsPipeline singleThread =
+                new StatisticsPipeline(
+                        "test-single",
+                        Statistics::new,
+                        List.of(activeUsers, covidcodes),
+                        List.of(),
+                        1,
+                        Duration.ofSeconds(1),
+                        clock);
+        try {
+            singleThread.run(false);
+            assertNotNull(singleThread.getLoadedAt("covidcodes"));
+            assertEquals(0, covidcodes.cancels.get());
+        } finally {
+            singleThread.shutdown();
+        }
+    }
+
+    @Test
+    public void testResultsOfPreviousDayAreReloaded() {
+        pipeline.run(false);
+        clock.advance(Duration.ofHours(14));
+        pipeline.run(false);
+        assertEquals(2, covidcodes.loads.get());
+    }
+
+    private interface Merge {
+        void apply(Statistics statistics, int loadCount);
+    }
+
+    /** returns the number of loads as value */
+    private static class CountingSource implements MetricSource {
+        private final String name;
+        private final Duration refreshInterval;
+        private final Merge merge;
+        private final AtomicInteger loads = new AtomicInteger();
+        private final AtomicInteger cancels = new AtomicInteger();
+        private volatile boolean fail = false;
+        private volatile Duration delay = Duration.ZERO;
+        private volatile Duration timeout;
+
+        private CountingSource(String name, Duration refreshInterval, Merge merge) {
+            this.name = name;
+            this.refreshInterval = refreshInterval;
+            this.merge = merge;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Duration getRefreshInterval() {
+            return refreshInterval;
+        }
+
+        @Override
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        @Override
+        public void cancel() {
+            cancels.incrementAndGet();
+        }
+
+        @Override
+        public MetricResult load() throws InterruptedException {
+            Thread.sleep(delay.toMillis());
+            int count = loads.incrementAndGet();
+            if (fail) {
+                throw new IllegalStateException("source failed");
+            }
+            return statistics -> merge.apply(statistics, count);
+        }
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        private void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.HistorySeries;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+import org.dpppt.additionalinfo.backend.ws.statistics.BoundsRule;
+import org.dpppt.additionalinfo.backend.ws.statistics.DayOverDayRule;
+import org.dpppt.additionalinfo.backend.ws.statistics.PlausibilityField;
+import org.dpppt.additionalinfo.backend.ws.statistics.RelativeChangeRule;
+import org.dpppt.additionalinfo.backend.ws.statistics.StatisticsPlausibilityFilter;
+import org.dpppt.additionalinfo.backend.ws.statistics.ZScoreRule;
+import org.junit.Test;
+
+public class StatisticsPlausibilityFilterTest {
+
+    private static final int DAYS = 60;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final StatisticsPlausibilityFilter filter =
+            new StatisticsPlausibilityFilter(
+                    List.of(
+                            new RelativeChangeRule(
+                                    PlausibilityField.TOTAL_ACTIVE_USERS, 0.5, Double.MAX_VALUE),
+                            new BoundsRule(
+                                    PlausibilityField.COVIDCODES_ENTERED_0_TO_2D_PREV_WEEK, 0, 1),
+                            new DayOverDayRule(PlausibilityField.NEW_INFECTIONS, 1, 50),
+                            new ZScoreRule(PlausibilityField.NEW_INFECTIONS, 28, 6)),
+                    meterRegistry);
+
+    @Test
+    public void testPlausibleStatisticsAreAccepted() {
+        filter.setAccepted(statistics(1_600_000, 0.5, 210));
+        Statistics candidate = statistics(1_500_000, 0.4, 230);
+        assertEquals(Set.of(), filter.check(candidate));
+        assertEquals(Set.of(), candidate.getRejectedFields());
+        assertEquals(1_500_000, (int) candidate.getTotalActiveUsers());
+        assertEquals(230, (int) candidate.getHistory().newInfections().get(DAYS - 1));
+    }
+
+    @Test
+    public void testImplausibleValuesKeepAcceptedValues() {
+        filter.setAccepted(statistics(1_600_000, 0.5, 210));
+        Statistics candidate = statistics(400_000, 1.5, 210);
+        candidate.setTotalActiveUsers(null);
+        assertEquals(
+                Set.of("totalActiveUsers", "covidcodesEntered0to2dPrevWeek"),
+                filter.check(candidate));
+        assertEquals(
+                Set.of("totalActiveUsers", "covidcodesEntered0to2dPrevWeek"),
+                candidate.getRejectedFields());
+        assertEquals(1_600_000, (int) candidate.getTotalActiveUsers());
+        assertEquals(0.5, candidate.getCovidcodesEntered0to2dPrevWeek(), 0);
+        assertEquals(1, rejections("totalActiveUsers", "missing"), 0);
+        assertEquals(1, rejections("covidcodesEntered0to2dPrevWeek", "bounds"), 0);
+
+        candidate = statistics(400_000, 0.5, 210);
+        filter.check(candidate);
+        assertEquals(1_600_000, (int) candidate.getTotalActiveUsers());
+        assertEquals(1, rejections("totalActiveUsers", "relative"), 0);
+    }
+
+    @Test
+    public void testOutlierRevertsHistory() {
+        Statistics accepted = statistics(1_600_000, 0.5, 210);
+        accepted.setNewInfectionsSevenDayAvg(200);
+        filter.setAccepted(accepted);
+
+        // the day over day change is within bounds, but the day is an outlier
+        Statistics candidate = statistics(1_600_000, 0.5, 260);
+        candidate.setNewInfectionsSevenDayAvg(205);
+        filter.check(candidate);
+        assertEquals(210, (int) candidate.getHistory().newInfections().get(DAYS - 1));
+        assertEquals(200, (int) candidate.getNewInfectionsSevenDayAvg());
+        assertEquals(1, rejections("history.newInfections", "zscore"), 0);
+        assertTrue(StatisticsPlausibilityFilter.isHistoryRejected(candidate));
+
+        candidate = statistics(1_600_000, 0.5, 1000);
+        filter.check(candidate);
+        assertEquals(210, (int) candidate.getHistory().newInfections().get(DAYS - 1));
+        assertEquals(1, rejections("history.newInfections", "dayoverday"), 0);
+    }
+
+    @Test
+    public void testReusedValuesAreCheckedAgain() {
+        filter.setAccepted(statistics(1_600_000, 0.5, 210));
+        filter.check(statistics(400_000, 0.5, 210));
+
+        // e.g. the rejected value is reused because its source could not be reloaded
+        Statistics stale = statistics(400_000, 0.5, 210);
+        stale.setStaleFields(Map.of("totalActiveUsers", Instant.now()));
+        assertEquals(Set.of("totalActiveUsers"), filter.check(stale));
+        assertEquals(1_600_000, (int) stale.getTotalActiveUsers());
+        assertEquals(1, rejections("totalActiveUsers", "relative"), 0);
+
+        // a plausible value is accepted, the same implausible value is counted again
+        assertEquals(Set.of(), filter.check(statistics(1_500_000, 0.5, 210)));
+        filter.check(statistics(400_000, 0.5, 210));
+        assertEquals(2, rejections("totalActiveUsers", "relative"), 0);
+
+        // nothing to fall back to
+        filter.setAccepted(null);
+        assertEquals(Set.of(), filter.check(statistics(400_000, 1.5, 210)));
+    }
+
+    private double rejections(String field, String rule) {
+        return meterRegistry
+                .get("statistics.plausibility.rejections")
+                .tag("field", field)
+                .tag("rule", rule)
+                .counter()
+                .count();
+    }
+
+    /** new infections alternate between 195 and 205, except for the latest day */
+    private static Statistics statistics(
+            int totalActiveUsers, double covidcodesEntered0to2dPrevWeek, int latestNewInfections) {
+        Statistics statistics = new Statistics();
+        statistics.setTotalActiveUsers(totalActiveUsers);
+        statistics.setCovidcodesEntered0to2dPrevWeek(covidcodesEntered0to2dPrevWeek);
+        HistorySeries history = new HistorySeries(LocalDate.of(2021, 1, 1), DAYS);
+        for (int i = 0; i < DAYS - 1; i++) {
+            history.newInfections().set(i, i % 2 == 0 ? 195 : 205);
+        }
+        history.newInfections().set(DAYS - 1, latestNewInfections);
+        statistics.setHistory(history);
+        return statistics;
+    }
+}
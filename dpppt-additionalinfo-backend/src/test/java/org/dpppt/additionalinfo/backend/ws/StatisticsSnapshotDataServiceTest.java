@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import org.dpppt.additionalinfo.backend.ws.data.FileStatisticsSnapshotDataServiceImpl;
+import org.dpppt.additionalinfo.backend.ws.data.StatisticsSnapshotDataService;
+import org.dpppt.additionalinfo.backend.ws.data.StoredStatisticsSnapshot;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@SpringBootTest
+@RunWith(SpringJUnit4ClassRunner.class)
+@ComponentScan(basePackages = {"org.dpppt.additionalinfo.backend.ws.config"})
+@ActiveProfiles("postgres-test")
+public class StatisticsSnapshotDataServiceTest {
+	
+	@Autowired StatisticsSnapshotDataService statisticsSnapshotDataService;
+	
+	@Test
+	public void testUpsertAndFindLatest() {
+		Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+		byte[] latest = "{\"totalActiveUsers\":2}".getBytes(StandardCharsets.UTF_8);
+		statisticsSnapshotDataService.upsertSnapshot(latest, now);
+		// an older snapshot of another instance must not replace the latest one
+		statisticsSnapshotDataService.upsertSnapshot(
+				"{\"totalActiveUsers\":1}".getBytes(StandardCharsets.UTF_8), now.minusSeconds(60));
+		
+		StoredStatisticsSnapshot found = statisticsSnapshotDataService.findLatestSnapshot();
+		assertArrayEquals(latest, found.getStatistics());
+		assertEquals(now, found.getCreatedAt());
+		assertEquals(now, statisticsSnapshotDataService.findLatestSnapshotCreatedAt());
+	}
+	
+	@Test
+	public void testFileUpsertAndFindLatest() throws Exception {
+		Path dir = Files.createTempDirectory("statistics");
+		StatisticsSnapshotDataService fileDataService =
+				new FileStatisticsSnapshotDataServiceImpl(dir.resolve("statistics.json"));
+		assertNull(fileDataService.findLatestSnapshot());
+		assertNull(fileDataService.findLatestSnapshotCreatedAt());
+		
+		Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+		byte[] statistics = "{\"totalActiveUsers\":1}".getBytes(StandardCharsets.UTF_8);
+		fileDataService.upsertSnapshot(statistics, now);
+		
+		StoredStatisticsSnapshot found = fileDataService.findLatestSnapshot();
+		assertArrayEquals(statistics, found.getStatistics());
+		assertEquals(now, found.getCreatedAt());
+		assertEquals(now, fileDataService.findLatestSnapshotCreatedAt());
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.Statistics;
+import org.dpppt.additionalinfo.backend.ws.snapshot.StatisticsSnapshot;
+import org.dpppt.additionalinfo.backend.ws.snapshot.StatisticsSnapshotFactory;
+import org.dpppt.additionalinfo.backend.ws.snapshot.StatisticsSnapshotHolder;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+public class StatisticsSnapshotHolderTest {
+
+    private StatisticsSnapshotFactory factory;
+
+    @Before
+    public void setup() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        factory =
+                new StatisticsSnapshotFactory(
+                        Jackson2ObjectMapperBuilder.json().build(),
+                        generator.generateKeyPair(),
+                        Duration.ofDays(1),
+                        List.of(),
+                        Duration.ofHours(1),
+                        new SimpleMeterRegistry());
+    }
+
+    @Test
+    public void testPublishAssignsVersions() {
+        StatisticsSnapshotHolder holder = new StatisticsSnapshotHolder();
+        assertNull(holder.get());
+        assertEquals(1, holder.publish(factory.create(statistics(1))).getVersion());
+        assertEquals(2, holder.publish(factory.create(statistics(2))).getVersion());
+        assertEquals(2, holder.get().getVersion());
+    }
+
+    @Test
+    public void testReplaceKeepsNewerSnapshot() {
+        StatisticsSnapshotHolder holder = new StatisticsSnapshotHolder();
+        StatisticsSnapshot first = holder.publish(factory.create(statistics(1)));
+        StatisticsSnapshot resigned = holder.replace(first, factory.resign(first));
+        assertEquals(1, resigned.getVersion());
+        assertSame(resigned, holder.get());
+
+        // a reload published a newer snapshot while the outdated one was re-signed
+        StatisticsSnapshot second = holder.publish(factory.create(statistics(2)));
+        assertSame(second, holder.replace(resigned, factory.resign(resigned)));
+        assertSame(second, holder.get());
+    }
+
+    @Test
+    public void testPublishIfNewerKeepsNewerSnapshot() {
+        StatisticsSnapshotHolder holder = new StatisticsSnapshotHolder();
+        StatisticsSnapshot reloaded = holder.publish(factory.create(statistics(2)));
+
+        // the stored snapshot was created before the one published by the reload
+        Instant createdAt = reloaded.getCreatedAt();
+        assertNull(holder.publishIfNewer(restore(statistics(1), createdAt.minusSeconds(60))));
+        assertNull(holder.publishIfNewer(restore(statistics(1), createdAt)));
+        assertSame(reloaded, holder.get());
+
+        StatisticsSnapshot newer = restore(statistics(3), createdAt.plusSeconds(60));
+        assertEquals(2, holder.publishIfNewer(newer).getVersion());
+        assertEquals(Integer.valueOf(3), holder.get().getStatistics().getTotalActiveUsers());
+    }
+
+    @Test
+    public void testSnapshotIsNotAffectedByModifications() {
+        Statistics statistics = statistics(1);
+        StatisticsSnapshot snapshot = factory.create(statistics);
+        statistics.setTotalActiveUsers(2);
+        snapshot.getStatistics().setTotalActiveUsers(3);
+        assertEquals(Integer.valueOf(1), snapshot.getStatistics().getTotalActiveUsers());
+    }
+
+    private StatisticsSnapshot restore(Statistics statistics, Instant createdAt) {
+        return factory.restore(factory.create(statistics).getIdentity().getBody(), createdAt);
+    }
+
+    private static Statistics statistics(int totalActiveUsers) {
+        Statistics statistics = new Statistics();
+        statistics.setTotalActiveUsers(totalActiveUsers);
+        return statistics;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+
+import org.dpppt.additionalinfo.backend.ws.data.JdbcStatisticsSnapshotDataServiceImpl;
+import org.dpppt.additionalinfo.backend.ws.data.JdbcStatisticsSnapshotListener;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@SpringBootTest
+@RunWith(SpringJUnit4ClassRunner.class)
+@ComponentScan(basePackages = {"org.dpppt.additionalinfo.backend.ws.config"})
+@ActiveProfiles("postgres-test")
+public class StatisticsSnapshotListenerTest {
+	
+	@Autowired DataSource dataSource;
+	
+	private Instant createdAt;
+	
+	@After
+	public void tearDown() {
+		if (createdAt != null) {
+			new JdbcTemplate(dataSource)
+					.update(
+							"delete from t_statistics_snapshot where created_at = ?",
+							Timestamp.from(createdAt));
+		}
+	}
+	
+	@Test
+	public void testNotifiedOnUpsert() throws Exception {
+		BlockingQueue<Optional<Instant>> stored = new LinkedBlockingQueue<>();
+		try (JdbcStatisticsSnapshotListener listener =
+				new JdbcStatisticsSnapshotListener(
+						dataSource,
+						createdAt -> stored.add(Optional.ofNullable(createdAt)),
+						Duration.ofMillis(500),
+						Duration.ofMillis(100))) {
+			listener.start();
+			// called once after connecting, as snapshots might have been missed
+			assertNull(stored.poll(10, TimeUnit.SECONDS).orElse(null));
+			
+			createdAt = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+			new JdbcStatisticsSnapshotDataServiceImpl(dataSource)
+					.upsertSnapshot("{}".getBytes(StandardCharsets.UTF_8), createdAt);
+			assertEquals(createdAt, stored.poll(1, TimeUnit.SECONDS).orElse(null));
+		}
+	}
+}
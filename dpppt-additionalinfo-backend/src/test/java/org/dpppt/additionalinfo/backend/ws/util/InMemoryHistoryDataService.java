@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws.util;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.dpppt.additionalinfo.backend.ws.data.HistoryDataService;
+import org.dpppt.additionalinfo.backend.ws.model.statistics.History;
+
+/** history data service without a database, for running the splunk client in tests */
+public class InMemoryHistoryDataService implements HistoryDataService {
+    private final TreeMap<LocalDate, Integer> sevenDayAvgs = new TreeMap<>();
+    private final TreeMap<LocalDate, History> dailyHistory = new TreeMap<>();
+
+    @Override
+    public synchronized void upsertLatestSevenDayAvgForDay(
+            Integer latestSevenDayAvg, LocalDate day) {
+        sevenDayAvgs.put(day, latestSevenDayAvg);
+    }
+
+    @Override
+    public synchronized Integer findLatestSevenDayAvgForDay(LocalDate day) {
+        return sevenDayAvgs.get(day);
+    }
+
+    @Override
+    public synchronized void upsertLatestSevenDayAvgs(
+            Map<LocalDate, Integer> latestSevenDayAvgs) {
+        sevenDayAvgs.putAll(latestSevenDayAvgs);
+    }
+
+    @Override
+    public synchronized Map<LocalDate, Integer> findLatestSevenDayAvgs(
+            LocalDate from, LocalDate to) {
+        return new TreeMap<>(sevenDayAvgs.subMap(from, to));
+    }
+
+    @Override
+    public synchronized void upsertDailyHistory(List<History> history) {
+        history.forEach(day -> dailyHistory.put(day.getDate(), day));
+    }
+
+    @Override
+    public synchronized List<History> findDailyHistory(LocalDate from, LocalDate to) {
+        return List.copyOf(dailyHistory.subMap(from, to).values());
+    }
+
+    @Override
+    public synchronized void removeBefore(LocalDate day) {
+        sevenDayAvgs.headMap(day).clear();
+        dailyHistory.headMap(day).clear();
+    }
+}
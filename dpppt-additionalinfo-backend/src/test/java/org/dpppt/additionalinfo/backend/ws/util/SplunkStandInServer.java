@@ -0,0 +1,461 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.additionalinfo.backend.ws.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Embedded stand-in for the Splunk search endpoint, so that the SplunkStatisticClient can be run
+ * against recorded or generated responses without network access. The responses are selected by
+ * the search parameter of the request and replayed in the format of the Splunk export api (one
+ * json object per line, including preview rows and NO_DATA values). Searches can also be run as
+ * search jobs: the job reports to be running for a configurable number of status requests, then
+ * its final results are served in pages.
+ *
+ * <p>The server can inject latency (before the response headers), limit the throughput of the
+ * response bodies and let a share of the requests fail, either with 503 or with a response body
+ * which is cut off in the middle (the connection is closed before the announced content length
+ * is reached).
+ */
+public class SplunkStandInServer implements AutoCloseable {
+
+    public static final String TIME_SUFFIX = " 00:00:00.000 CET";
+
+    /** how a request fails */
+    public enum Failure {
+        /** responds with 503 Service Unavailable */
+        STATUS,
+        /** responds with 200 OK, but closes the connection after half of the body */
+        TRUNCATED
+    }
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+    private static final String JOBS_PATH = "/services/search/jobs";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, byte[]> responses = new ConcurrentHashMap<>();
+    private final List<Map<String, String>> requests =
+            Collections.synchronizedList(new ArrayList<>());
+    private final Random random = new Random(42);
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger jobCount = new AtomicInteger();
+    private final AtomicInteger resultPageRequests = new AtomicInteger();
+    private final AtomicInteger cancelledJobs = new AtomicInteger();
+
+    private volatile Duration latency = Duration.ZERO;
+    private volatile long bytesPerSecond = 0;
+    private volatile double failureRate = 0;
+    private volatile Failure failure = Failure.STATUS;
+    private volatile int jobPolls = 1;
+
+    public SplunkStandInServer() {
+        try {
+            server =
+                    HttpServer.create(
+                            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public SplunkStandInServer start() {
+        server.start();
+        return this;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /** the url to configure as ws.statistics.splunk.url */
+    public String getUrl() {
+        return getJobsUrl() + "/export";
+    }
+
+    /** the url to configure as ws.statistics.splunk.jobs.url */
+    public String getJobsUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + JOBS_PATH;
+    }
+
+    /**
+     * replays the given response for all requests with the given search
+     *
+     * @param search
+     * @param response in the format of the export api
+     * @return
+     */
+    public SplunkStandInServer respond(String search, byte[] response) {
+        responses.put(search, response);
+        return this;
+    }
+
+    /**
+     * stops replaying the response of the given search, its requests fail with 404 (400 for search
+     * jobs)
+     *
+     * @param search
+     * @return
+     */
+    public SplunkStandInServer forget(String search) {
+        responses.remove(search);
+        return this;
+    }
+
+    /**
+     * replays the response recorded in the given classpath resource for all requests with the
+     * given search
+     *
+     * @param search
+     * @param resource
+     * @return
+     */
+    public SplunkStandInServer respondWithResource(String search, String resource) {
+        try (InputStream in = SplunkStandInServer.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Unknown resource: " + resource);
+            }
+            return respond(search, in.readAllBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** time to wait before the response headers are sent */
+    public SplunkStandInServer setLatency(Duration latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /** maximal throughput of the response bodies, 0 for no limit */
+    public SplunkStandInServer setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * lets a share of the requests fail. The failing requests are chosen by a seeded random, so
+     * that a run can be repeated.
+     *
+     * @param failureRate between 0 (no failures) and 1 (all requests fail)
+     * @param failure
+     * @return
+     */
+    public SplunkStandInServer setFailures(double failureRate, Failure failure) {
+        this.failureRate = failureRate;
+        this.failure = failure;
+        return this;
+    }
+
+    /** number of status requests for which a search job is still running */
+    public SplunkStandInServer setJobPolls(int jobPolls) {
+        this.jobPolls = jobPolls;
+        return this;
+    }
+
+    /** the parameters of all searches (exports and created jobs) received so far */
+    public List<Map<String, String>> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    public int getResultPageRequests() {
+        return resultPageRequests.get();
+    }
+
+    public int getCancelledJobs() {
+        return cancelledJobs.get();
+    }
+
+    /**
+     * generates a response of the export api with one final result per day. The results are
+     * preceded by the given number of preview rows, as splunk sends them while the search is
+     * still running. Use this to scale the payload to years of days.
+     *
+     * @param field name of the value in the result, e.g. positiveTestCount
+     * @param from the first day
+     * @param days number of days
+     * @param value the value of the n-th day, e.g. "NO_DATA" or a number, null to leave out the day
+     * @param previewRows
+     * @return
+     */
+    public static byte[] dailyResponse(
+            String field, LocalDate from, int days, IntFunction<String> value, int previewRows) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int offset = 0;
+        for (int i = 0; i < previewRows; i++) {
+            writeRow(out, true, offset++, field, from.plusDays(i % Math.max(days, 1)), "0");
+        }
+        for (int i = 0; i < days; i++) {
+            String dayValue = value.apply(i);
+            if (dayValue != null) {
+                writeRow(out, false, offset++, field, from.plusDays(i), dayValue);
+            }
+        }
+        writeLine(out, "{\"preview\":false,\"offset\":" + offset + ",\"lastrow\":true}");
+        return out.toByteArray();
+    }
+
+    /**
+     * generates a response of the export api with a single final result
+     *
+     * @param day
+     * @param values field names and values of the result
+     * @return
+     */
+    public static byte[] singleResponse(LocalDate day, Map<String, String> values) {
+        StringBuilder result = new StringBuilder("{\"_time\":\"" + day + TIME_SUFFIX + "\"");
+        values.forEach((k, v) -> result.append(",\"" + k + "\":\"" + v + "\""));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeLine(out, "{\"preview\":false,\"offset\":0,\"result\":" + result + "}}");
+        writeLine(out, "{\"preview\":false,\"offset\":1,\"lastrow\":true}");
+        return out.toByteArray();
+    }
+
+    private static void writeRow(
+            ByteArrayOutputStream out,
+            boolean preview,
+            int offset,
+            String field,
+            LocalDate day,
+            String value) {
+        writeLine(
+                out,
+                "{\"preview\":"
+                        + preview
+                        + ",\"offset\":"
+                        + offset
+                        + ",\"result\":{\"_time\":\""
+                        + day
+                        + TIME_SUFFIX
+                        + "\",\""
+                        + field
+                        + "\":\""
+                        + value
+                        + "\"}}");
+    }
+
+    private static void writeLine(ByteArrayOutputStream out, String line) {
+        out.writeBytes((line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            Map<String, String> params =
+                    parseForm(
+                            "GET".equals(method)
+                                    ? exchange.getRequestURI().getRawQuery()
+                                    : new String(
+                                            exchange.getRequestBody().readAllBytes(),
+                                            StandardCharsets.UTF_8));
+            sleep(latency.toMillis());
+
+            if (path.endsWith("/export")) {
+                requests.add(params);
+                byte[] response = responses.get(params.getOrDefault("search", ""));
+                send(exchange, response == null ? 400 : 200, response);
+                return;
+            }
+            int jobs = path.indexOf(JOBS_PATH);
+            if (jobs < 0) {
+                send(exchange, 404, null);
+                return;
+            }
+            String[] segments =
+                    path.substring(jobs + JOBS_PATH.length()).replaceFirst("^/", "").split("/");
+            if (segments[0].isEmpty() && "POST".equals(method)) {
+                requests.add(params);
+                createJob(exchange, params);
+                return;
+            }
+            Job job = this.jobs.get(segments[0]);
+            if (job == null) {
+                send(exchange, 404, null);
+            } else if (segments.length == 1) {
+                sendJobStatus(exchange, job);
+            } else if ("results".equals(segments[1])) {
+                resultPageRequests.incrementAndGet();
+                sendResultPage(
+                        exchange,
+                        job,
+                        Integer.parseInt(params.getOrDefault("offset", "0")),
+                        Integer.parseInt(params.getOrDefault("count", "100")));
+            } else if ("control".equals(segments[1])) {
+                this.jobs.remove(segments[0]);
+                cancelledJobs.incrementAndGet();
+                send(exchange, 200, null);
+            } else {
+                send(exchange, 404, null);
+            }
+        }
+    }
+
+    private void createJob(HttpExchange exchange, Map<String, String> params) throws IOException {
+        byte[] response = responses.get(params.getOrDefault("search", ""));
+        if (response == null) {
+            send(exchange, 400, null);
+            return;
+        }
+        String sid = "standin_" + jobCount.incrementAndGet();
+        jobs.put(sid, new Job(finalResults(response)));
+        send(exchange, 201, json(Map.of("sid", sid)));
+    }
+
+    private void sendJobStatus(HttpExchange exchange, Job job) throws IOException {
+        boolean done = job.statusRequests.incrementAndGet() > jobPolls;
+        Map<String, Object> content = new LinkedHashMap<>();
+        content.put("dispatchState", done ? "DONE" : "RUNNING");
+        content.put("isDone", done);
+        content.put("isFailed", false);
+        content.put("resultCount", done ? job.results.size() : 0);
+        send(exchange, 200, json(Map.of("entry", List.of(Map.of("content", content)))));
+    }
+
+    private void sendResultPage(HttpExchange exchange, Job job, int offset, int count)
+            throws IOException {
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("preview", false);
+        page.put("init_offset", offset);
+        page.put(
+                "results",
+                job.results.subList(
+                        Math.min(offset, job.results.size()),
+                        Math.min(offset + count, job.results.size())));
+        send(exchange, 200, json(page));
+    }
+
+    /** sends the response, failures are injected here */
+    private void send(HttpExchange exchange, int status, byte[] response) throws IOException {
+        Failure failure = null;
+        synchronized (random) {
+            if (random.nextDouble() < failureRate) {
+                failure = this.failure;
+            }
+        }
+        if (failure == Failure.STATUS) {
+            status = 503;
+        }
+        if (response == null || status >= 300) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, response.length);
+        int length = failure == Failure.TRUNCATED ? response.length / 2 : response.length;
+        writeThrottled(exchange.getResponseBody(), response, length);
+    }
+
+    /** the final results of a response of the export api */
+    private static List<JsonNode> finalResults(byte[] response) throws IOException {
+        List<JsonNode> results = new ArrayList<>();
+        try (MappingIterator<JsonNode> rows =
+                OBJECT_MAPPER.readerFor(JsonNode.class).readValues(response)) {
+            while (rows.hasNextValue()) {
+                JsonNode row = rows.nextValue();
+                if (!row.path("preview").asBoolean() && row.has("result")) {
+                    results.add(row.get("result"));
+                }
+            }
+        }
+        return results;
+    }
+
+    private static byte[] json(Object value) throws IOException {
+        return OBJECT_MAPPER.writeValueAsBytes(value);
+    }
+
+    private void writeThrottled(OutputStream out, byte[] response, int length) throws IOException {
+        long limit = bytesPerSecond;
+        for (int offset = 0; offset < length; offset += CHUNK_SIZE) {
+            int chunk = Math.min(CHUNK_SIZE, length - offset);
+            out.write(response, offset, chunk);
+            out.flush();
+            if (limit > 0) {
+                sleep(chunk * 1000L / limit);
+            }
+        }
+    }
+
+    private static Map<String, String> parseForm(String body) {
+        Map<String, String> params = new LinkedHashMap<>();
+        if (body == null) {
+            return params;
+        }
+        for (String pair : body.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int separator = pair.indexOf('=');
+            String key = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            params.put(
+                    URLDecoder.decode(key, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static void sleep(long millis) throws IOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted");
+        }
+    }
+
+    private static class Job {
+        private final List<JsonNode> results;
+        private final AtomicInteger statusRequests = new AtomicInteger();
+
+        private Job(List<JsonNode> results) {
+            this.results = results;
+        }
+    }
+}